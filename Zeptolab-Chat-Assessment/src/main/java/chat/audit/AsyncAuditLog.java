@@ -0,0 +1,268 @@
+package chat.audit;
+
+import chat.jfr.AuditLogEvent;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import jdk.jfr.FlightRecorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit log that keeps disk I/O off the event loops. Callers serialize events and put them into a bounded
+ * multi-producer ring buffer, a single writer thread drains it into large batches that are appended to
+ * {@link RotatingLogFile rotating files}. A full buffer is handled by the {@link OverflowPolicy}, events that
+ * don't fit are counted as dropped. Throughput and lag are exposed by getters and the {@code chat.AuditLog}
+ * periodic JFR event.
+ */
+public class AsyncAuditLog implements AuditLog, AutoCloseable {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(AsyncAuditLog.class);
+    private static final int BATCH_BYTES = 256 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Queue<byte[]> ring;
+    private final OverflowPolicy policy;
+    private final long blockNanos;
+    private final RotatingLogFile file;
+    private final Thread writer;
+    private final Runnable periodicEvent = this::emitPeriodicEvent;
+    private volatile boolean closed;
+
+    private final LongAdder recordedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder blockedEvents = new LongAdder();
+    // written by the writer thread only
+    private volatile long writtenEvents;
+    private volatile long writtenBytes;
+    private volatile long failedEvents;
+    private volatile long batches;
+    private volatile long lagMillis;
+    // read by the periodic event only
+    private long lastEmittedEvents;
+    private long lastEmittedNanos = System.nanoTime();
+
+    /**
+     * @param capacity    number of events the buffer holds, rounded up to a power of two
+     * @param blockMillis how long {@link OverflowPolicy#BLOCK} waits for a free slot
+     */
+    public AsyncAuditLog(final RotatingLogFile file, final int capacity, final OverflowPolicy policy,
+                         final long blockMillis) {
+        this.ring = PlatformDependent.newFixedMpscQueue(capacity);
+        this.policy = policy;
+        this.blockNanos = TimeUnit.MILLISECONDS.toNanos(blockMillis);
+        this.file = file;
+        this.writer = new DefaultThreadFactory("chat-audit-writer", true).newThread(this::drain);
+    }
+
+    public AsyncAuditLog(final Path directory, final long maxFileBytes, final boolean compress, final int capacity,
+                         final OverflowPolicy policy, final long blockMillis) {
+        this(new RotatingLogFile(directory, maxFileBytes, compress), capacity, policy, blockMillis);
+    }
+
+    public void start() {
+        writer.start();
+        FlightRecorder.addPeriodicEvent(AuditLogEvent.class, periodicEvent);
+    }
+
+    @Override
+    public void login(final String user) {
+        record(AuditRecord.LOGIN, user, null, null);
+    }
+
+    @Override
+    public void join(final String user, final String room) {
+        record(AuditRecord.JOIN, user, room, null);
+    }
+
+    @Override
+    public void leave(final String user, final String room) {
+        record(AuditRecord.LEAVE, user, room, null);
+    }
+
+    @Override
+    public void message(final String user, final String room, final String text) {
+        record(AuditRecord.MESSAGE, user, room, text);
+    }
+
+    private void record(final String type, final String user, final String room, final String text) {
+        if (closed) {
+            droppedEvents.increment();
+            return;
+        }
+        final var event = AuditRecord.serialize(System.currentTimeMillis(), type, user, room, text);
+        if (ring.offer(event)) {
+            recordedEvents.increment();
+            return;
+        }
+        if (policy == OverflowPolicy.BLOCK && offerWithin(event)) {
+            recordedEvents.increment();
+            return;
+        }
+        droppedEvents.increment();
+    }
+
+    private boolean offerWithin(final byte[] event) {
+        blockedEvents.increment();
+        final var deadline = System.nanoTime() + blockNanos;
+        do {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (ring.offer(event)) {
+                return true;
+            }
+        } while (System.nanoTime() - deadline < 0);
+        return false;
+    }
+
+    /**
+     * Writer loop: copies events into the batch until it's full or the buffer is empty, then appends it in one
+     * write. Keeps draining after close until the buffer is empty.
+     */
+    private void drain() {
+        final var batch = new byte[BATCH_BYTES];
+        var length = 0;
+        var count = 0;
+        while (true) {
+            final var event = ring.poll();
+            if (event == null) {
+                if (count > 0) {
+                    writeBatch(batch, length, count);
+                    length = 0;
+                    count = 0;
+                    continue;
+                }
+                if (closed) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (count == 0) {
+                lagMillis = Math.max(0, System.currentTimeMillis() - AuditRecord.timestamp(event));
+            }
+            if (length + event.length > batch.length && count > 0) {
+                writeBatch(batch, length, count);
+                length = 0;
+                count = 0;
+            }
+            if (event.length > batch.length) {
+                writeBatch(event, event.length, 1);
+                continue;
+            }
+            System.arraycopy(event, 0, batch, length, event.length);
+            length += event.length;
+            count++;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close audit log", e);
+        }
+    }
+
+    private void writeBatch(final byte[] batch, final int length, final int count) {
+        try {
+            file.write(batch, 0, length);
+            file.flush();
+            writtenEvents += count;
+            writtenBytes += length;
+            batches++;
+        } catch (IOException e) {
+            failedEvents += count;
+            LOGGER.warn("Failed to write {} audit events", count, e);
+        }
+    }
+
+    /**
+     * Stops accepting events and waits for the writer to write the buffered ones.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        FlightRecorder.removePeriodicEvent(periodicEvent);
+        if (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getRecordedEvents() {
+        return recordedEvents.sum();
+    }
+
+    public long getWrittenEvents() {
+        return writtenEvents;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Events not recorded because the buffer was full or the log was closed.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Events that found the buffer full and had to wait, whether they were recorded in the end or not.
+     */
+    public long getBlockedEvents() {
+        return blockedEvents.sum();
+    }
+
+    /**
+     * Events lost because the file could not be written.
+     */
+    public long getFailedEvents() {
+        return failedEvents;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Events recorded but not written yet.
+     */
+    public long getPendingEvents() {
+        return Math.max(0, getRecordedEvents() - writtenEvents - failedEvents);
+    }
+
+    /**
+     * Time the oldest event of the last batch waited in the buffer.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    private void emitPeriodicEvent() {
+        final var now = System.nanoTime();
+        final var written = writtenEvents;
+        final var event = new AuditLogEvent();
+        event.eventsPerSecond = (written - lastEmittedEvents) * TimeUnit.SECONDS.toNanos(1)
+                / Math.max(1, now - lastEmittedNanos);
+        event.writtenEvents = written;
+        event.writtenBytes = writtenBytes;
+        event.droppedEvents = getDroppedEvents();
+        event.pendingEvents = getPendingEvents();
+        event.lagMillis = lagMillis;
+        event.commit();
+        lastEmittedEvents = written;
+        lastEmittedNanos = now;
+    }
+}
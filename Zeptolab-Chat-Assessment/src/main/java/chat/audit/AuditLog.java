@@ -0,0 +1,23 @@
+package chat.audit;
+
+/**
+ * Records chat traffic for compliance. Methods are called on event loops, so implementations must not block
+ * on I/O.
+ */
+public interface AuditLog {
+
+    AuditLog NONE = new AuditLog() {
+    };
+
+    default void login(final String user) {
+    }
+
+    default void join(final String user, final String room) {
+    }
+
+    default void leave(final String user, final String room) {
+    }
+
+    default void message(final String user, final String room, final String text) {
+    }
+}
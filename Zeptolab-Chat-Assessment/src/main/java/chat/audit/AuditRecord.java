@@ -0,0 +1,56 @@
+package chat.audit;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serialized form of an audit event: one UTF-8 line of tab separated epoch milliseconds, event type, user,
+ * room and message text. Tabs, line breaks and backslashes in the values are escaped with a backslash.
+ */
+public final class AuditRecord {
+
+    public static final String LOGIN = "LOGIN";
+    public static final String JOIN = "JOIN";
+    public static final String LEAVE = "LEAVE";
+    public static final String MESSAGE = "MESSAGE";
+
+    private AuditRecord() {
+    }
+
+    public static byte[] serialize(final long timestamp, final String type, final String user, final String room,
+                                   final String text) {
+        final var line = new StringBuilder(64 + (text == null ? 0 : text.length()))
+                .append(timestamp).append('\t').append(type).append('\t');
+        escape(line, user).append('\t');
+        escape(line, room).append('\t');
+        escape(line, text).append('\n');
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the timestamp of a serialized record without decoding the rest of it.
+     */
+    public static long timestamp(final byte[] record) {
+        var timestamp = 0L;
+        for (int i = 0; i < record.length && record[i] != '\t'; i++) {
+            timestamp = timestamp * 10 + (record[i] - '0');
+        }
+        return timestamp;
+    }
+
+    private static StringBuilder escape(final StringBuilder line, final String value) {
+        if (value == null) {
+            return line;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            switch (c) {
+                case '\t' -> line.append("\\t");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\\' -> line.append("\\\\");
+                default -> line.append(c);
+            }
+        }
+        return line;
+    }
+}
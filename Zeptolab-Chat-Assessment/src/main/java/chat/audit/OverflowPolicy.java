@@ -0,0 +1,17 @@
+package chat.audit;
+
+/**
+ * What recording an audit event does when the buffer of the writer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Waits for the writer to free a slot, up to the configured time, then drops the event.
+     */
+    BLOCK,
+
+    /**
+     * Drops the event right away.
+     */
+    DROP
+}
@@ -0,0 +1,128 @@
+package chat.audit;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only audit file that is closed and replaced by a new one once it holds the configured number of bytes.
+ * Files are named after the time they were opened, optionally gzip compressed as they're written.
+ * Only used by the writer thread.
+ */
+public class RotatingLogFile implements AutoCloseable {
+
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final boolean compress;
+    private OutputStream out;
+    private Path current;
+    private long currentBytes;
+    private int sequence;
+    private int rotations;
+
+    /**
+     * @param maxFileBytes uncompressed size after which the file is rotated
+     */
+    public RotatingLogFile(final Path directory, final long maxFileBytes, final boolean compress) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.compress = compress;
+    }
+
+    /**
+     * Appends whole lines, rotating between lines when the file would grow past its maximum size.
+     * A line longer than the maximum gets a file of its own.
+     */
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        var position = offset;
+        final var end = offset + length;
+        while (position < end) {
+            if (out == null) {
+                open();
+            }
+            final var chunk = fittingLines(bytes, position, end);
+            if (chunk == 0) {
+                close();
+                rotations++;
+                continue;
+            }
+            out.write(bytes, position, chunk);
+            currentBytes += chunk;
+            position += chunk;
+        }
+    }
+
+    /**
+     * Hands written bytes over to the file system, finishing the current compressed block.
+     */
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * @return file written to, or null if nothing has been written since the last rotation
+     */
+    public Path getCurrentFile() {
+        return current;
+    }
+
+    public int getRotations() {
+        return rotations;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+                current = null;
+                currentBytes = 0;
+            }
+        }
+    }
+
+    /**
+     * @return length of the lines starting at the position that fit into the current file, 0 if none does
+     * and the file should be rotated, or the first line if the file is empty
+     */
+    private int fittingLines(final byte[] bytes, final int position, final int end) {
+        final var fitting = maxFileBytes - currentBytes;
+        if (end - position <= fitting) {
+            return end - position;
+        }
+        for (int i = position + (int) Math.max(0, fitting) - 1; i >= position; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1 - position;
+            }
+        }
+        if (currentBytes > 0) {
+            return 0;
+        }
+        for (int i = position; i < end; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1 - position;
+            }
+        }
+        return end - position;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        final var name = String.format("audit-%d-%04d.log%s", System.currentTimeMillis(), sequence++,
+                compress ? ".gz" : "");
+        current = directory.resolve(name);
+        final var file = Files.newOutputStream(current);
+        out = compress
+                ? new GZIPOutputStream(new BufferedOutputStream(file, COMPRESSION_BUFFER_SIZE), COMPRESSION_BUFFER_SIZE, true)
+                : file;
+    }
+}
@@ -0,0 +1,441 @@
+package chat.cluster;
+
+import chat.model.ChatChannel;
+import chat.model.ChatChannelListener;
+import chat.model.User;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member of a chat server cluster. Every room is owned by one node chosen by consistent hashing of its name.
+ * Nodes tell the owner when a room gets its first or loses its last local user, and send messages of local
+ * users to the owner, which relays them to every other node with users in the room. The owner acknowledges
+ * joins, and a node receives messages of a room from the acknowledgement on. Each node only writes to its own
+ * connections.
+ * <p>
+ * All cluster state is confined to a single event loop, which also serves every relay connection, so frames
+ * queued by concurrent writers are flushed to peers in batches. Values read from other threads are published
+ * as volatile snapshots, so that they can be read from any event loop without blocking.
+ */
+public class ClusterNode implements ChatChannelListener {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(ClusterNode.class);
+    private static final int MAX_FRAME_LENGTH = 1 << 20;
+    private static final long RECONNECT_DELAY_MILLIS = 1_000;
+    /**
+     * Times a published message may be passed on by a node that doesn't own its room. Messages that have
+     * been forwarded already, or would go back to their origin, are dropped instead, so that nodes whose
+     * rings briefly disagree don't pass them back and forth.
+     */
+    private static final int MAX_PUBLISH_HOPS = 1;
+    /**
+     * A published message that can't be routed, because nodes disagree about the owner of its room while they
+     * connect, is held and routed again once the ring of this node has changed. It's dropped if that doesn't
+     * happen within this many retries.
+     */
+    private static final int MAX_PUBLISH_RETRIES = 50;
+    private static final long PUBLISH_RETRY_MILLIS = 100;
+
+    private final String nodeId;
+    private final Map<String, InetSocketAddress> addresses;
+    private final RelayFrameCodec codec = new RelayFrameCodec();
+    /**
+     * Rooms with local users and number of those users. Rooms are forgotten when their last local user
+     * leaves, so that evicted rooms and their history aren't kept alive by the cluster node.
+     */
+    private final Map<String, ChatChannel> localRooms = new HashMap<>();
+    private final Map<String, Integer> localMembers = new HashMap<>();
+    /**
+     * Nodes with users in the rooms owned by this node, other than this node.
+     */
+    private final Map<String, Set<String>> subscribers = new HashMap<>();
+    /**
+     * Rooms with local users whose owner has acknowledged this node's join, including rooms owned by this node.
+     */
+    private final Set<String> subscribedRooms = ConcurrentHashMap.newKeySet();
+    /**
+     * Outbound relay connections of connected peers.
+     */
+    private final Map<String, Channel> peers = new HashMap<>();
+    private final Set<Channel> unflushed = new HashSet<>();
+    private volatile ConsistentHashRing ring;
+    private volatile int liveNodeCount = 1;
+    private volatile int localRoomCount;
+    private EventLoop eventLoop;
+    private Channel serverChannel;
+    private volatile boolean stopped;
+
+    /**
+     * @param nodeId    id of this node
+     * @param addresses relay addresses of all nodes including this one
+     */
+    public ClusterNode(final String nodeId, final Map<String, InetSocketAddress> addresses) {
+        if (!addresses.containsKey(nodeId)) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not listed in cluster nodes");
+        }
+        this.nodeId = nodeId;
+        this.addresses = Map.copyOf(addresses);
+        this.ring = new ConsistentHashRing(List.of(nodeId));
+    }
+
+    /**
+     * Parses cluster nodes given as {@code id=host:port} separated by commas.
+     */
+    public static Map<String, InetSocketAddress> parseAddresses(final String clusterNodes) {
+        final var addresses = new LinkedHashMap<String, InetSocketAddress>();
+        for (final String node : clusterNodes.split(",")) {
+            final var trimmed = node.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final var separator = trimmed.indexOf('=');
+            final var colon = trimmed.lastIndexOf(':');
+            if (separator <= 0 || colon < separator) {
+                throw new IllegalArgumentException("Invalid cluster node " + trimmed + ", expected id=host:port");
+            }
+            addresses.put(trimmed.substring(0, separator), InetSocketAddress.createUnresolved(
+                    trimmed.substring(separator + 1, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * Starts accepting relay connections and connecting to the other nodes.
+     */
+    public void start(final EventLoop eventLoop) throws InterruptedException {
+        this.eventLoop = eventLoop;
+        serverChannel = new ServerBootstrap()
+                .group(eventLoop, eventLoop)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        initRelayPipeline(ch);
+                        ch.pipeline().addLast(new RelayHandler());
+                    }
+                })
+                .bind(addresses.get(nodeId).getPort()).sync().channel();
+        for (final String peer : addresses.keySet()) {
+            if (!peer.equals(nodeId)) {
+                eventLoop.execute(() -> connect(peer));
+            }
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        if (eventLoop != null) {
+            eventLoop.submit(() -> List.copyOf(peers.values()).forEach(Channel::close)).syncUninterruptibly();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Number of nodes in the ring, including this one.
+     */
+    public int getLiveNodeCount() {
+        return liveNodeCount;
+    }
+
+    /**
+     * Number of rooms with local users, for monitoring.
+     */
+    public int getLocalRoomCount() {
+        return localRoomCount;
+    }
+
+    /**
+     * Whether messages published to the room on any node reach users of this node, which is the case once
+     * the owner of the room has acknowledged that this node has users in it.
+     */
+    public boolean isSubscribed(final String room) {
+        return subscribedRooms.contains(room);
+    }
+
+    /**
+     * @return id of the node currently owning the room
+     */
+    public String ownerOf(final String room) {
+        return ring.ownerOf(room);
+    }
+
+    @Override
+    public void userJoined(final ChatChannel channel, final User user) {
+        execute(() -> {
+            final var room = channel.getName();
+            localRooms.put(room, channel);
+            localRoomCount = localRooms.size();
+            if (localMembers.merge(room, 1, Integer::sum) == 1) {
+                subscribe(room, user.getUsername());
+            }
+        });
+    }
+
+    @Override
+    public void userLeft(final ChatChannel channel, final User user) {
+        execute(() -> {
+            final var room = channel.getName();
+            if (localMembers.merge(room, -1, Integer::sum) == 0) {
+                localMembers.remove(room);
+                localRooms.remove(room, channel);
+                localRoomCount = localRooms.size();
+                subscribedRooms.remove(room);
+                sendToOwner(new RelayFrame(RelayFrame.LEAVE, nodeId, room, user.getUsername()));
+            }
+        });
+    }
+
+    @Override
+    public void messageWritten(final ChatChannel channel, final User user, final String message,
+                               final String line) {
+        execute(() -> {
+            final var frame = new RelayFrame(RelayFrame.PUBLISH, nodeId, channel.getName(), line);
+            if (!sendToOwner(frame)) {
+                relay(frame);
+            }
+        });
+    }
+
+    private void execute(final Runnable task) {
+        if (eventLoop != null && !stopped) {
+            eventLoop.execute(task);
+        }
+    }
+
+    private void onFrame(final RelayFrame frame) {
+        final var room = frame.getRoom();
+        switch (frame.getType()) {
+            case RelayFrame.JOIN -> {
+                subscribers.computeIfAbsent(room, r -> new HashSet<>()).add(frame.getOrigin());
+                // A node that routed the join by a stale ring joins the actual owner once its ring changes.
+                if (ring.ownerOf(room).equals(nodeId)) {
+                    send(frame.getOrigin(), new RelayFrame(RelayFrame.SUBSCRIBED, nodeId, room, ""));
+                }
+            }
+            case RelayFrame.SUBSCRIBED -> {
+                if (localMembers.containsKey(room) && ring.ownerOf(room).equals(frame.getOrigin())) {
+                    subscribedRooms.add(room);
+                }
+            }
+            case RelayFrame.LEAVE -> {
+                final var nodes = subscribers.get(room);
+                if (nodes != null && nodes.remove(frame.getOrigin()) && nodes.isEmpty()) {
+                    subscribers.remove(room);
+                }
+            }
+            case RelayFrame.PUBLISH -> {
+                // Ownership may have moved since the sender routed the message.
+                final var owner = ring.ownerOf(room);
+                if (owner.equals(nodeId)) {
+                    publish(frame);
+                } else if (frame.getHops() < MAX_PUBLISH_HOPS && !owner.equals(frame.getOrigin())) {
+                    send(owner, frame.forwarded());
+                } else {
+                    retryPublish(frame, ring, 1);
+                }
+            }
+            case RelayFrame.DELIVER -> {
+                final var channel = localRooms.get(room);
+                if (channel != null) {
+                    channel.deliver(frame.getPayload());
+                }
+            }
+            default -> LOGGER.warn("Unknown relay frame type {} from {}", frame.getType(), frame.getOrigin());
+        }
+    }
+
+    /**
+     * Delivers message published to a room owned by this node to its local users and relays it.
+     */
+    private void publish(final RelayFrame frame) {
+        final var channel = localRooms.get(frame.getRoom());
+        if (channel != null) {
+            channel.deliver(frame.getPayload());
+        }
+        relay(frame);
+    }
+
+    /**
+     * Routes a held message again after a delay, if this node has become the owner of its room or its ring
+     * has changed since the message was held.
+     */
+    private void retryPublish(final RelayFrame frame, final ConsistentHashRing heldRing, final int retries) {
+        eventLoop.schedule(() -> {
+            final var current = ring;
+            final var owner = current.ownerOf(frame.getRoom());
+            if (owner.equals(nodeId)) {
+                publish(frame);
+            } else if (current != heldRing) {
+                send(owner, frame.forwarded());
+            } else if (retries < MAX_PUBLISH_RETRIES && !stopped) {
+                retryPublish(frame, heldRing, retries + 1);
+            } else {
+                LOGGER.warn("Dropping message of room {} from {}, owned by {}", frame.getRoom(), frame.getOrigin(),
+                        owner);
+            }
+        }, PUBLISH_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tells the owner of the room that this node has users in it, a room owned by this node is subscribed
+     * right away.
+     */
+    private void subscribe(final String room, final String user) {
+        if (sendToOwner(new RelayFrame(RelayFrame.JOIN, nodeId, room, user))) {
+            subscribedRooms.remove(room);
+        } else {
+            subscribedRooms.add(room);
+        }
+    }
+
+    /**
+     * Sends message published to a room owned by this node to every other node with users in it,
+     * except the one it came from.
+     */
+    private void relay(final RelayFrame published) {
+        final var nodes = subscribers.get(published.getRoom());
+        if (nodes == null) {
+            return;
+        }
+        final var frame = new RelayFrame(RelayFrame.DELIVER, nodeId, published.getRoom(), published.getPayload());
+        for (final String node : nodes) {
+            if (!node.equals(published.getOrigin())) {
+                send(node, frame);
+            }
+        }
+    }
+
+    /**
+     * @return false if this node is the owner of the frame's room and nothing was sent
+     */
+    private boolean sendToOwner(final RelayFrame frame) {
+        final var owner = ring.ownerOf(frame.getRoom());
+        if (owner.equals(nodeId)) {
+            return false;
+        }
+        send(owner, frame);
+        return true;
+    }
+
+    private void send(final String node, final RelayFrame frame) {
+        final var channel = peers.get(node);
+        if (channel == null) {
+            return;
+        }
+        channel.write(frame, channel.voidPromise());
+        if (unflushed.isEmpty()) {
+            eventLoop.execute(this::flush);
+        }
+        unflushed.add(channel);
+    }
+
+    private void flush() {
+        for (final Channel channel : unflushed) {
+            channel.flush();
+        }
+        unflushed.clear();
+    }
+
+    private void connect(final String peer) {
+        if (stopped) {
+            return;
+        }
+        final var address = addresses.get(peer);
+        new Bootstrap()
+                .group(eventLoop)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        initRelayPipeline(ch);
+                        ch.pipeline().addLast(new RelayHandler());
+                    }
+                })
+                .connect(address.getHostString(), address.getPort())
+                .addListener((ChannelFutureListener) future -> {
+                    if (future.isSuccess()) {
+                        peerConnected(peer, future.channel());
+                    } else {
+                        eventLoop.schedule(() -> connect(peer), RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                });
+    }
+
+    private void peerConnected(final String peer, final Channel channel) {
+        peers.put(peer, channel);
+        channel.closeFuture().addListener(future -> peerDisconnected(peer, channel));
+        rebalance();
+    }
+
+    private void peerDisconnected(final String peer, final Channel channel) {
+        if (peers.remove(peer, channel)) {
+            unflushed.remove(channel);
+            for (final Iterator<Set<String>> it = subscribers.values().iterator(); it.hasNext(); ) {
+                final var nodes = it.next();
+                if (nodes.remove(peer) && nodes.isEmpty()) {
+                    it.remove();
+                }
+            }
+            rebalance();
+        }
+        if (!stopped) {
+            eventLoop.schedule(() -> connect(peer), RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuilds the ring from the connected nodes, forgets subscriptions of rooms this node no longer owns
+     * and announces local rooms to their owners, which acknowledge them again. Announcements are idempotent,
+     * so they're sent for every room rather than only for the moved ones.
+     */
+    private void rebalance() {
+        final var nodes = new ArrayList<String>(peers.size() + 1);
+        nodes.add(nodeId);
+        nodes.addAll(peers.keySet());
+        ring = new ConsistentHashRing(nodes);
+        liveNodeCount = nodes.size();
+        subscribers.keySet().removeIf(room -> !ring.ownerOf(room).equals(nodeId));
+        for (final String room : localMembers.keySet()) {
+            subscribe(room, "");
+        }
+    }
+
+    private void initRelayPipeline(final Channel ch) {
+        ch.pipeline()
+                .addLast("framer", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4))
+                .addLast("prepender", new LengthFieldPrepender(4))
+                .addLast("codec", codec);
+    }
+
+    private class RelayHandler extends SimpleChannelInboundHandler<RelayFrame> {
+
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, final RelayFrame frame) {
+            onFrame(frame);
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+            LOGGER.warn("Closing relay connection {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package chat.cluster;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring of cluster node ids. Every node is placed on the ring at several
+ * virtual points, so when a node joins or leaves only the rooms of its arcs move to other nodes.
+ */
+public class ConsistentHashRing {
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Integer, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(final Collection<String> nodeIds) {
+        for (final String nodeId : nodeIds) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(nodeId + '#' + i), nodeId);
+            }
+        }
+    }
+
+    /**
+     * @return id of the node owning the room, or null if the ring is empty
+     */
+    public String ownerOf(final String room) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(room));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * FNV-1a over the characters, finished with the murmur3 mixer for an even spread of similar names.
+     */
+    static int hash(final String value) {
+        var h = 0x811C9DC5;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
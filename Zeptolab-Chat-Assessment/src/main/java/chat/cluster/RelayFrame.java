@@ -0,0 +1,123 @@
+package chat.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Message of the inter-node protocol. On the wire a frame is a type byte and a hop count byte followed by
+ * origin node id, room name and payload, each as a length prefixed UTF-8 string. Frames are length prefixed as a whole
+ * by the relay pipeline.
+ */
+public class RelayFrame {
+
+    /**
+     * A user of the origin node has joined the room, sent to the room owner. Payload is the user name.
+     */
+    public static final byte JOIN = 1;
+    /**
+     * A user of the origin node has left the room, sent to the room owner. Payload is the user name.
+     */
+    public static final byte LEAVE = 2;
+    /**
+     * Message written on the origin node, sent to the room owner. Payload is the message line.
+     */
+    public static final byte PUBLISH = 3;
+    /**
+     * Message sent by the room owner to every other node with users in the room. Payload is the message line.
+     */
+    public static final byte DELIVER = 4;
+    /**
+     * Sent by the room owner to a node whose join it has processed, so messages published from then on reach
+     * users of that node. Payload is empty.
+     */
+    public static final byte SUBSCRIBED = 5;
+
+    private final byte type;
+    private final int hops;
+    private final String origin;
+    private final String room;
+    private final String payload;
+
+    public RelayFrame(final byte type, final String origin, final String room, final String payload) {
+        this(type, 0, origin, room, payload);
+    }
+
+    /**
+     * @param hops number of times the frame has been forwarded by a node that wasn't its destination
+     */
+    public RelayFrame(final byte type, final int hops, final String origin, final String room,
+                      final String payload) {
+        this.type = type;
+        this.hops = hops;
+        this.origin = origin;
+        this.room = room;
+        this.payload = payload;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    /**
+     * @return copy of the frame passed on by a node that isn't its destination
+     */
+    public RelayFrame forwarded() {
+        return new RelayFrame(type, hops + 1, origin, room, payload);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public ByteBuf encode(final ByteBufAllocator allocator) {
+        final var buffer = allocator.buffer(9 + origin.length() + room.length() + payload.length());
+        buffer.writeByte(type);
+        buffer.writeByte(Math.min(hops, 255));
+        writeString(buffer, origin, false);
+        writeString(buffer, room, false);
+        writeString(buffer, payload, true);
+        return buffer;
+    }
+
+    public static RelayFrame decode(final ByteBuf buffer) {
+        final var type = buffer.readByte();
+        final var hops = buffer.readUnsignedByte();
+        final var origin = readString(buffer, buffer.readUnsignedShort());
+        final var room = readString(buffer, buffer.readUnsignedShort());
+        final var payload = readString(buffer, buffer.readInt());
+        return new RelayFrame(type, hops, origin, room, payload);
+    }
+
+    private static void writeString(final ByteBuf buffer, final String value, final boolean wide) {
+        final var lengthIndex = buffer.writerIndex();
+        if (wide) {
+            buffer.writeInt(0);
+        } else {
+            buffer.writeShort(0);
+        }
+        final var length = ByteBufUtil.writeUtf8(buffer, value);
+        if (wide) {
+            buffer.setInt(lengthIndex, length);
+        } else {
+            buffer.setShort(lengthIndex, length);
+        }
+    }
+
+    private static String readString(final ByteBuf buffer, final int length) {
+        return buffer.readCharSequence(length, CharsetUtil.UTF_8).toString();
+    }
+}
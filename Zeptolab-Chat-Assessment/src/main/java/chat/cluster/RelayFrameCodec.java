@@ -0,0 +1,25 @@
+package chat.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.List;
+
+/**
+ * Converts length delimited relay frames to {@link RelayFrame} objects and back.
+ */
+@ChannelHandler.Sharable
+public class RelayFrameCodec extends MessageToMessageCodec<ByteBuf, RelayFrame> {
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final RelayFrame frame, final List<Object> out) {
+        out.add(frame.encode(ctx.alloc()));
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf buffer, final List<Object> out) {
+        out.add(RelayFrame.decode(buffer));
+    }
+}
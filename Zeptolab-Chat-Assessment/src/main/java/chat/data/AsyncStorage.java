@@ -0,0 +1,45 @@
+package chat.data;
+
+import chat.model.ChatChannel;
+import chat.model.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Non-blocking variant of {@link Storage}, for backends that can't answer on the calling thread.
+ */
+public interface AsyncStorage {
+
+    CompletionStage<Collection<ChatChannel>> getChatChannels();
+    CompletionStage<ChatChannel> getChatChannel(final String name);
+    CompletionStage<ChatChannel> getOrAddChatChannel(final String name, final Function<String, ChatChannel> factory);
+    CompletionStage<User> createUser(final ChannelHandlerContext ctx, final String username, final String password);
+    CompletionStage<User> getUserByName(final String username);
+    CompletionStage<ByteBuf> getUserList(final User user);
+    CompletionStage<ByteBuf> getChatChannelList();
+    CompletionStage<ByteBuf> getChatChannelList(final String prefix, final int offset, final int limit);
+    CompletionStage<ChatChannel> getCurrentChatChannel(final User user);
+    CompletionStage<List<ChatChannel>> getUserChatChannels(final User user);
+    CompletionStage<Boolean> anyChannelContainsUser(final User user);
+    CompletionStage<Void> removeUserFromChannels(final User user);
+    CompletionStage<Void> removeUserFromChannel(final User user, final ChatChannel channel);
+    CompletionStage<Void> removeChannelFromUser(final User user);
+    CompletionStage<Void> addChatChannelToUser(final User user, final ChatChannel channel);
+    CompletionStage<Void> addChatChannel(final ChatChannel channel);
+    CompletionStage<Void> loginUser(final Channel channel, final User user);
+    CompletionStage<Void> logoutUser(final ChannelHandlerContext ctx, final User user);
+    CompletionStage<User> getUserByChannel(final Channel channel);
+
+    /**
+     * Adapts synchronous storage, every call is made on the calling thread and returns a completed stage.
+     */
+    static AsyncStorage completed(final Storage storage) {
+        return new CompletedAsyncStorage(storage);
+    }
+}
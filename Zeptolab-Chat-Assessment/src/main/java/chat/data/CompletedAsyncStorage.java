@@ -0,0 +1,134 @@
+package chat.data;
+
+import chat.model.ChatChannel;
+import chat.model.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncStorage} over synchronous storage such as {@link LocalStorage}. Results are wrapped into
+ * already completed stages, results without a value share constant stages, so callers continue
+ * on the same thread without a task switch.
+ */
+public class CompletedAsyncStorage implements AsyncStorage {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final CompletableFuture<Boolean> TRUE = CompletableFuture.completedFuture(true);
+    private static final CompletableFuture<Boolean> FALSE = CompletableFuture.completedFuture(false);
+
+    private final Storage storage;
+
+    public CompletedAsyncStorage(final Storage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public CompletionStage<Collection<ChatChannel>> getChatChannels() {
+        return CompletableFuture.completedFuture(storage.getChatChannels());
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getChatChannel(final String name) {
+        return CompletableFuture.completedFuture(storage.getChatChannel(name));
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getOrAddChatChannel(final String name,
+                                                            final Function<String, ChatChannel> factory) {
+        return CompletableFuture.completedFuture(storage.getOrAddChatChannel(name, factory));
+    }
+
+    @Override
+    public CompletionStage<User> createUser(final ChannelHandlerContext ctx, final String username, final String password) {
+        return CompletableFuture.completedFuture(storage.createUser(ctx, username, password));
+    }
+
+    @Override
+    public CompletionStage<User> getUserByName(final String username) {
+        return CompletableFuture.completedFuture(storage.getUserByName(username));
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getUserList(final User user) {
+        return CompletableFuture.completedFuture(storage.getUserList(user));
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getChatChannelList() {
+        return CompletableFuture.completedFuture(storage.getChatChannelList());
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getChatChannelList(final String prefix, final int offset, final int limit) {
+        return CompletableFuture.completedFuture(storage.getChatChannelList(prefix, offset, limit));
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getCurrentChatChannel(final User user) {
+        return CompletableFuture.completedFuture(storage.getCurrentChatChannel(user));
+    }
+
+    @Override
+    public CompletionStage<List<ChatChannel>> getUserChatChannels(final User user) {
+        return CompletableFuture.completedFuture(storage.getUserChatChannels(user));
+    }
+
+    @Override
+    public CompletionStage<Boolean> anyChannelContainsUser(final User user) {
+        return storage.anyChannelContainsUser(user) ? TRUE : FALSE;
+    }
+
+    @Override
+    public CompletionStage<Void> removeUserFromChannels(final User user) {
+        storage.removeUserFromChannels(user);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> removeUserFromChannel(final User user, final ChatChannel channel) {
+        storage.removeUserFromChannel(user, channel);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> removeChannelFromUser(final User user) {
+        storage.removeChannelFromUser(user);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> addChatChannelToUser(final User user, final ChatChannel channel) {
+        storage.addChatChannelToUser(user, channel);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> addChatChannel(final ChatChannel channel) {
+        storage.addChatChannel(channel);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> loginUser(final Channel channel, final User user) {
+        storage.loginUser(channel, user);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<Void> logoutUser(final ChannelHandlerContext ctx, final User user) {
+        storage.logoutUser(ctx, user);
+        return DONE;
+    }
+
+    @Override
+    public CompletionStage<User> getUserByChannel(final Channel channel) {
+        return CompletableFuture.completedFuture(storage.getUserByChannel(channel));
+    }
+}
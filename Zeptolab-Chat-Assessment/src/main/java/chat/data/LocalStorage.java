@@ -1,25 +1,104 @@
 package chat.data;
 
 import chat.model.ChatChannel;
+import chat.model.History;
 import chat.model.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class LocalStorage implements Storage {
 
+    private static final int[] NO_CHAT_CHANNELS = new int[0];
+    private static final long DEFAULT_MAX_SPILLED_BYTES = 64L * 1024 * 1024;
+
     private final List<User> users = new ArrayList<>();
-    private final Set<ChatChannel> chatChannels = new HashSet<>();
-    private final Map<User, ChatChannel> userToChat = new ConcurrentHashMap<>();
+    private final Map<String, User> usersByName = new HashMap<>();
+    private final IntObjectMap<ChatChannel> chatChannels = new IntObjectHashMap<>();
+    private final NavigableMap<String, ChatChannel> chatChannelsByName = new TreeMap<>();
+    private long chatChannelsVersion;
+    private ByteBuf chatChannelList;
+    private long chatChannelListVersion = -1;
+    /**
+     * Ids of the chat channels assigned to every user, indexed by user id. The current channel, which messages
+     * of the user are sent to, comes first. Arrays are small and replaced or shifted in place under the lock.
+     */
+    private int[][] userToChats = newUserToChats(16);
+    /**
+     * Deflated history of evicted rooms by name, restored when a room of the same name is added again.
+     * Kept in spill order, so that the history spilled longest ago is dropped first when over the budget.
+     */
+    private final Map<String, byte[]> spilledHistory = new LinkedHashMap<>();
+    private long spilledBytes;
+    /**
+     * Sequence number the next message would get in rooms whose spilled history has been dropped, by name,
+     * so that their numbering continues and resuming clients are told about the gap.
+     */
+    private final Map<String, Long> droppedSequences = new HashMap<>();
+    private final long maxSpilledBytes;
+    private final long idleRoomTtlMillis;
+    private final Timer timer;
+    /**
+     * Pending eviction of every channel that has become empty, by channel id. Scheduling another one cancels
+     * the previous, so a room that is joined and left over and over keeps a single timeout.
+     */
+    private final IntObjectMap<Timeout> evictions = new IntObjectHashMap<>();
     public static final String LINE_SEPARATOR = System.lineSeparator();
     public static final AttributeKey<User> USER_KEY = AttributeKey.valueOf("user");
 
+    public LocalStorage() {
+        this(0, null);
+    }
+
+    public LocalStorage(final long idleRoomTtlMillis, final Timer timer) {
+        this(idleRoomTtlMillis, timer, DEFAULT_MAX_SPILLED_BYTES);
+    }
+
+    /**
+     * @param idleRoomTtlMillis how long a room stays without users before it's evicted, 0 to keep rooms forever
+     * @param timer             timer evicting idle rooms, owned by the server, null to keep rooms forever
+     * @param maxSpilledBytes   deflated history of evicted rooms kept in total, the oldest is dropped over it
+     */
+    public LocalStorage(final long idleRoomTtlMillis, final Timer timer, final long maxSpilledBytes) {
+        this.maxSpilledBytes = maxSpilledBytes;
+        this.idleRoomTtlMillis = idleRoomTtlMillis;
+        this.timer = timer;
+    }
+
+    /**
+     * @return snapshot of the chat channels, which callers can iterate while channels are added and evicted
+     */
+    @Override
+    public synchronized Collection<ChatChannel> getChatChannels() {
+        return List.copyOf(chatChannels.values());
+    }
+
     @Override
-    public synchronized Set<ChatChannel> getChatChannels() {
-        return Collections.unmodifiableSet(chatChannels);
+    public synchronized ChatChannel getChatChannel(final String name) {
+        return chatChannelsByName.get(name);
+    }
+
+    @Override
+    public synchronized ChatChannel getOrAddChatChannel(final String name,
+                                                        final Function<String, ChatChannel> factory) {
+        final var existing = chatChannelsByName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final var created = factory.apply(name);
+        addChatChannel(created);
+        return created;
     }
 
     @Override
@@ -32,76 +111,283 @@ public class LocalStorage implements Storage {
         if (user != null) {
             final var channel = ctx.channel();
             user.removeChannel(channel);
-            if (user.getChannels().isEmpty()) {
-                userToChat.get(user).removeUser(user);
+            if (!user.hasChannels()) {
+                removeUserFromChannels(user);
             }
         }
     }
 
     @Override
     public synchronized User createUser(final ChannelHandlerContext ctx, final String username, final String password) {
-        final var user = new User(username, password);
+        final var user = new User(users.size(), username, password);
         ctx.channel().attr(USER_KEY).set(user);
         final var channel = ctx.channel();
         user.addChannel(channel);
         users.add(user);
+        usersByName.put(username.toLowerCase(Locale.ROOT), user);
+        if (user.getId() == userToChats.length) {
+            final var grown = newUserToChats(userToChats.length << 1);
+            System.arraycopy(userToChats, 0, grown, 0, userToChats.length);
+            userToChats = grown;
+        }
         return user;
     }
+
     public synchronized User getUserByName(final String username) {
-        return users.stream().filter(u -> u.getUsername().equalsIgnoreCase(username)).findFirst().orElse(null);
+        return usersByName.get(username.toLowerCase(Locale.ROOT));
     }
 
     @Override
-    public synchronized Set<User> getUserList(final User user) {
-        final var channel = userToChat.get(user);
-        if (channel == null) {
-            return Set.of();
-        }
-        synchronized (channel) {
-            return Set.copyOf(channel.getUsers());
+    public synchronized ByteBuf getUserList(final User user) {
+        final var channel = chatChannelOf(user);
+        return channel == null ? Unpooled.EMPTY_BUFFER : channel.getUsersResponse();
+    }
+
+    @Override
+    public synchronized ByteBuf getChatChannelList() {
+        if (chatChannelListVersion != chatChannelsVersion) {
+            if (chatChannelList != null) {
+                chatChannelList.release();
+            }
+            chatChannelList = encodeChatChannelList(chatChannelsByName.values(), "", 0, Integer.MAX_VALUE);
+            chatChannelListVersion = chatChannelsVersion;
         }
+        return chatChannelList.retainedDuplicate();
+    }
+
+    @Override
+    public synchronized ByteBuf getChatChannelList(final String prefix, final int offset, final int limit) {
+        return encodeChatChannelList(chatChannelsByName.tailMap(prefix, true).values(), prefix, offset, limit);
     }
 
     @Override
     public synchronized ChatChannel getCurrentChatChannel(final User user) {
-        final var channel = userToChat.get(user);
-        return channel != null && (channel.getUsers().contains(user) || channel.addUser(user)) ? channel : null;
+        final var channel = chatChannelOf(user);
+        return channel != null && (channel.containsUser(user) || channel.addUser(user)) ? channel : null;
+    }
+
+    @Override
+    public synchronized List<ChatChannel> getUserChatChannels(final User user) {
+        final var ids = userToChats[user.getId()];
+        if (ids.length == 0) {
+            return List.of();
+        }
+        final var channels = new ArrayList<ChatChannel>(ids.length);
+        for (final int id : ids) {
+            final var channel = chatChannels.get(id);
+            if (channel != null) {
+                channels.add(channel);
+            }
+        }
+        return channels;
     }
 
     @Override
     public synchronized boolean anyChannelContainsUser(final User user) {
-        return userToChat.containsKey(user);
+        return userToChats[user.getId()].length != 0;
     }
 
+    /**
+     * Removes user from the channels assigned to them, only visiting those channels.
+     */
     @Override
     public synchronized void removeUserFromChannels(final User user) {
-        synchronized (chatChannels) {
-            chatChannels.forEach(channel -> {
-                final var chUsers = channel.getUsers();
-                if (chUsers.contains(user)) {
-                    channel.removeUser(user);
-                }
-            });
+        for (final int id : userToChats[user.getId()]) {
+            final var channel = chatChannels.get(id);
+            if (channel != null) {
+                channel.removeUser(user);
+                scheduleEvictionIfEmpty(channel);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removeUserFromChannel(final User user, final ChatChannel channel) {
+        channel.removeUser(user);
+        scheduleEvictionIfEmpty(channel);
+        final var ids = userToChats[user.getId()];
+        final var index = indexOf(ids, channel.getId());
+        if (index >= 0) {
+            final var updated = new int[ids.length - 1];
+            System.arraycopy(ids, 0, updated, 0, index);
+            System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+            userToChats[user.getId()] = updated;
         }
     }
 
     @Override
     public synchronized void removeChannelFromUser(final User user) {
-        userToChat.remove(user);
+        userToChats[user.getId()] = NO_CHAT_CHANNELS;
     }
 
+    /**
+     * Assigns channel to user, if it isn't yet, and makes it their current channel. Ids of evicted channels
+     * are dropped when the assignment grows.
+     */
     @Override
     public synchronized void addChatChannelToUser(final User user, final ChatChannel channel) {
-        userToChat.put(user, channel);
+        final var ids = userToChats[user.getId()];
+        final var index = indexOf(ids, channel.getId());
+        if (index > 0) {
+            System.arraycopy(ids, 0, ids, 1, index);
+            ids[0] = channel.getId();
+        } else if (index < 0) {
+            final var updated = new int[ids.length + 1];
+            updated[0] = channel.getId();
+            var length = 1;
+            for (final int id : ids) {
+                if (chatChannels.containsKey(id)) {
+                    updated[length++] = id;
+                }
+            }
+            userToChats[user.getId()] = length == updated.length ? updated : Arrays.copyOf(updated, length);
+        }
     }
 
+    /**
+     * Adds the channel unless it has been evicted, which happens when it was looked up before eviction.
+     */
     @Override
     public synchronized void addChatChannel(final ChatChannel channel) {
-        chatChannels.add(channel);
+        if (!channel.isEvicted() && chatChannels.put(channel.getId(), channel) == null) {
+            chatChannelsByName.put(channel.getName(), channel);
+            chatChannelsVersion++;
+            final var spilled = spilledHistory.remove(channel.getName());
+            if (spilled != null) {
+                spilledBytes -= spilled.length;
+            }
+            if (spilled != null) {
+                channel.restoreHistory(SpilledHistory.restore(spilled));
+            } else {
+                final var next = droppedSequences.remove(channel.getName());
+                if (next != null) {
+                    channel.restoreHistory(new History(next, List.of(), false));
+                }
+            }
+            // a room added for a join that then fails would otherwise never be evicted
+            scheduleEvictionIfEmpty(channel);
+        }
     }
 
     @Override
-    public synchronized User getUserByChannel(Channel channel) {
-        return users.stream().filter(u -> u.getChannels().contains(channel)).findFirst().orElse(null);
+    public User getUserByChannel(Channel channel) {
+        final var user = channel.attr(USER_KEY).get();
+        return user != null && user.getChannels().contains(channel) ? user : null;
+    }
+
+    /**
+     * Number of rooms whose history is spilled, for monitoring.
+     */
+    public synchronized int getSpilledRoomCount() {
+        return spilledHistory.size();
+    }
+
+    /**
+     * Number of rooms waiting to be evicted, for monitoring.
+     */
+    public synchronized int getPendingEvictionCount() {
+        return evictions.size();
+    }
+
+    /**
+     * Size of the deflated history of evicted rooms, for monitoring.
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Schedules eviction of the room if its last user has left, replacing its pending eviction. The room is only
+     * evicted if nobody joined or left it meanwhile.
+     */
+    private void scheduleEvictionIfEmpty(final ChatChannel channel) {
+        if (timer != null && idleRoomTtlMillis > 0 && channel.isEmpty()) {
+            final var version = channel.getVersion();
+            final var previous = evictions.put(channel.getId(), timer.newTimeout(
+                    timeout -> evictIfIdle(channel, version, timeout), idleRoomTtlMillis, TimeUnit.MILLISECONDS));
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+    }
+
+    private synchronized void evictIfIdle(final ChatChannel channel, final long version, final Timeout timeout) {
+        if (evictions.get(channel.getId()) == timeout) {
+            evictions.remove(channel.getId());
+        }
+        if (chatChannels.get(channel.getId()) != channel || channel.getVersion() != version || !channel.evict()) {
+            return;
+        }
+        chatChannels.remove(channel.getId());
+        chatChannelsByName.remove(channel.getName(), channel);
+        chatChannelsVersion++;
+        channel.releaseIndex();
+        synchronized (channel) {
+            final var history = channel.getHistory();
+            if (!history.getMessages().isEmpty()) {
+                spill(channel.getName(), SpilledHistory.spill(history));
+            }
+        }
+    }
+
+    /**
+     * Keeps history of an evicted room, dropping the history spilled longest ago while over the budget.
+     * Only the sequence number of the next message is kept for rooms whose history is dropped.
+     */
+    private void spill(final String name, final byte[] spilled) {
+        final var previous = spilledHistory.put(name, spilled);
+        spilledBytes += spilled.length - (previous == null ? 0 : previous.length);
+        for (final var it = spilledHistory.entrySet().iterator(); spilledBytes > maxSpilledBytes && it.hasNext(); ) {
+            final var dropped = it.next();
+            spilledBytes -= dropped.getValue().length;
+            droppedSequences.put(dropped.getKey(), SpilledHistory.nextSequence(dropped.getValue()));
+            it.remove();
+        }
+    }
+
+    /**
+     * A user can only be a member of the channels they're assigned to, so membership is resolved
+     * without scanning channels.
+     */
+    private ChatChannel chatChannelOf(final User user) {
+        final var ids = userToChats[user.getId()];
+        return ids.length == 0 ? null : chatChannels.get(ids[0]);
+    }
+
+    private static int indexOf(final int[] ids, final int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes names of sorted channels that start with prefix, one per line, skipping first offset matches.
+     */
+    private static ByteBuf encodeChatChannelList(final Collection<ChatChannel> sortedChannels, final String prefix,
+                                                 final int offset, final int limit) {
+        final var response = Unpooled.buffer();
+        var skipped = 0;
+        var written = 0;
+        for (final ChatChannel channel : sortedChannels) {
+            if (written == limit || !channel.getName().startsWith(prefix)) {
+                break;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+            ByteBufUtil.writeUtf8(response, channel.getName());
+            ByteBufUtil.writeUtf8(response, LINE_SEPARATOR);
+            written++;
+        }
+        return response;
+    }
+
+    private static int[][] newUserToChats(final int size) {
+        final var array = new int[size][];
+        Arrays.fill(array, NO_CHAT_CHANNELS);
+        return array;
     }
 }
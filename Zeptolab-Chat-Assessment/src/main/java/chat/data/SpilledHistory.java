@@ -0,0 +1,63 @@
+package chat.data;
+
+import chat.model.History;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact form of the history of an evicted room: sequence number of the first message and message count
+ * followed by the messages as modified UTF-8, deflated as a whole.
+ */
+public final class SpilledHistory {
+
+    private SpilledHistory() {
+    }
+
+    public static byte[] spill(final History history) {
+        final var messages = history.getMessages();
+        final var bytes = new ByteArrayOutputStream();
+        final var deflater = new Deflater(Deflater.BEST_SPEED);
+        try (final var out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeLong(history.getFirstSequence());
+            out.writeInt(messages.size());
+            for (final String message : messages) {
+                out.writeUTF(message);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return sequence number the next message of the room would get, read without restoring the messages
+     */
+    public static long nextSequence(final byte[] spilled) {
+        try (final var in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(spilled)))) {
+            return in.readLong() + in.readInt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static History restore(final byte[] spilled) {
+        try (final var in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(spilled)))) {
+            final var firstSequence = in.readLong();
+            final var count = in.readInt();
+            final var messages = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(in.readUTF());
+            }
+            return new History(firstSequence, messages, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
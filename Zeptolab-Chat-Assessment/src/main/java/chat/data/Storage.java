@@ -2,20 +2,34 @@ package chat.data;
 
 import chat.model.ChatChannel;
 import chat.model.User;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
 public interface Storage {
 
-    Set<ChatChannel> getChatChannels();
+    Collection<ChatChannel> getChatChannels();
+    ChatChannel getChatChannel(final String name);
+
+    /**
+     * Returns the channel of the given name, adding the one made by the factory if there is none, as one step
+     * so that concurrent first joins end up in the same channel.
+     */
+    ChatChannel getOrAddChatChannel(final String name, final Function<String, ChatChannel> factory);
     User createUser(final ChannelHandlerContext ctx, final String username, final String password);
     User getUserByName(final String username);
-    Set<User> getUserList(final User user);
+    ByteBuf getUserList(final User user);
+    ByteBuf getChatChannelList();
+    ByteBuf getChatChannelList(final String prefix, final int offset, final int limit);
     ChatChannel getCurrentChatChannel(final User user);
+    List<ChatChannel> getUserChatChannels(final User user);
     boolean anyChannelContainsUser(final User user);
     void removeUserFromChannels(final User user);
+    void removeUserFromChannel(final User user, final ChatChannel channel);
     void removeChannelFromUser(final User user);
     void addChatChannelToUser(final User user, final ChatChannel channel);
     void addChatChannel(final ChatChannel channel);
@@ -0,0 +1,56 @@
+package chat.feed;
+
+/**
+ * Membership change or message of a chat room, as published by the {@link RoomFeed}.
+ */
+public class RoomEvent {
+
+    public enum Type {
+        JOINED, LEFT, MESSAGE
+    }
+
+    private final Type type;
+    private final String room;
+    private final String user;
+    private final String text;
+    private final long timestamp;
+
+    public RoomEvent(final Type type, final String room, final String user, final String text, final long timestamp) {
+        this.type = type;
+        this.room = room;
+        this.user = user;
+        this.text = text;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return text written by the user, null for membership changes
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return epoch milliseconds of the event
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + room + " " + user + (text == null ? "" : ": " + text);
+    }
+}
@@ -0,0 +1,214 @@
+package chat.feed;
+
+import chat.model.ChatChannel;
+import chat.model.ChatChannelListener;
+import chat.model.User;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Feed of room events for in-process consumers, with a publisher of all rooms and one per room.
+ * Every subscriber has a bounded buffer and receives events as it requests them. Events are offered
+ * without waiting: when a subscriber's buffer is full, the event is dropped for that subscriber and counted,
+ * so slow subscribers don't slow down the broadcast. Without subscribers no event is created.
+ */
+public class RoomFeed implements ChatChannelListener, AutoCloseable {
+
+    private static final Executor DELIVERY =
+            Executors.newCachedThreadPool(new DefaultThreadFactory("chat-feed", true));
+
+    private final int bufferSize;
+    private final Executor executor;
+    private final SubmissionPublisher<RoomEvent> allRooms;
+    private final Map<String, SubmissionPublisher<RoomEvent>> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder droppedEvents = new LongAdder();
+    private volatile boolean closed;
+
+    public RoomFeed() {
+        this(Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param bufferSize events buffered for every subscriber, rounded up to a power of two
+     */
+    public RoomFeed(final int bufferSize) {
+        this(bufferSize, DELIVERY);
+    }
+
+    public RoomFeed(final int bufferSize, final Executor executor) {
+        this.bufferSize = bufferSize;
+        this.executor = executor;
+        this.allRooms = new SubmissionPublisher<>(executor, bufferSize);
+    }
+
+    /**
+     * @return publisher of events of all rooms
+     */
+    public Flow.Publisher<RoomEvent> publisher() {
+        return subscriber -> allRooms.subscribe(new TrackedSubscriber(subscriber));
+    }
+
+    /**
+     * @return publisher of events of the room, which doesn't need to exist yet
+     */
+    public Flow.Publisher<RoomEvent> publisher(final String room) {
+        return subscriber -> {
+            if (closed) {
+                // completes the subscriber right away
+                allRooms.subscribe(new TrackedSubscriber(subscriber));
+                return;
+            }
+            rooms.compute(room, (name, publisher) -> {
+                final var roomPublisher = publisher != null
+                        ? publisher
+                        : new SubmissionPublisher<RoomEvent>(executor, bufferSize);
+                roomPublisher.subscribe(new TrackedSubscriber(subscriber));
+                return roomPublisher;
+            });
+        };
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * Events not delivered to a subscriber because its buffer was full, counted once per subscriber.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    @Override
+    public void userJoined(final ChatChannel channel, final User user) {
+        if (subscribers.get() > 0) {
+            publish(new RoomEvent(RoomEvent.Type.JOINED, channel.getName(), user.getUsername(), null,
+                    System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void userLeft(final ChatChannel channel, final User user) {
+        if (subscribers.get() > 0) {
+            publish(new RoomEvent(RoomEvent.Type.LEFT, channel.getName(), user.getUsername(), null,
+                    System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void messageWritten(final ChatChannel channel, final User user, final String message, final String line) {
+        if (subscribers.get() > 0) {
+            publish(new RoomEvent(RoomEvent.Type.MESSAGE, channel.getName(), user.getUsername(), message,
+                    System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Completes all subscriptions, events published afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        allRooms.close();
+        rooms.values().forEach(SubmissionPublisher::close);
+        rooms.clear();
+    }
+
+    private void publish(final RoomEvent event) {
+        if (closed) {
+            return;
+        }
+        offer(allRooms, event);
+        if (rooms.isEmpty()) {
+            return;
+        }
+        final var room = rooms.get(event.getRoom());
+        if (room != null && !offer(room, event)) {
+            // nobody subscribes to the room anymore, unless someone has just subscribed
+            rooms.computeIfPresent(event.getRoom(), (name, publisher) -> {
+                if (publisher.hasSubscribers()) {
+                    return publisher;
+                }
+                publisher.close();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return whether the publisher has subscribers
+     */
+    private boolean offer(final SubmissionPublisher<RoomEvent> publisher, final RoomEvent event) {
+        if (!publisher.hasSubscribers()) {
+            return false;
+        }
+        publisher.offer(event, (subscriber, dropped) -> {
+            droppedEvents.increment();
+            return false;
+        });
+        return true;
+    }
+
+    /**
+     * Keeps count of active subscribers, so that no events are created while there are none.
+     */
+    private final class TrackedSubscriber implements Flow.Subscriber<RoomEvent> {
+
+        private final Flow.Subscriber<? super RoomEvent> delegate;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private TrackedSubscriber(final Flow.Subscriber<? super RoomEvent> delegate) {
+            this.delegate = delegate;
+            subscribers.incrementAndGet();
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    finish();
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(final RoomEvent item) {
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            finish();
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish();
+            delegate.onComplete();
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                subscribers.decrementAndGet();
+            }
+        }
+    }
+}
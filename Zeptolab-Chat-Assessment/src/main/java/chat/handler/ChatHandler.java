@@ -1,6 +1,8 @@
 package chat.handler;
 
+import chat.data.AsyncStorage;
 import chat.data.Storage;
+import chat.jfr.CommandEvent;
 import chat.service.ChatService;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -9,34 +11,71 @@ import static chat.data.LocalStorage.USER_KEY;
 
 public class ChatHandler extends SimpleChannelInboundHandler<String> {
 
-    private final Storage storage;
+    private final AsyncStorage storage;
     private final ChatService chatService;
 
     public ChatHandler(final ChatService chatService, final Storage storage) {
+        this(chatService, AsyncStorage.completed(storage));
+    }
+
+    public ChatHandler(final ChatService chatService, final AsyncStorage storage) {
         this.chatService = chatService;
         this.storage = storage;
     }
 
     @Override
     protected void channelRead0(final ChannelHandlerContext ctx, final String msg) {
-        final var parts = msg.trim().split("\\s+", 2);
-        final var command = parts[0];
-        final var argument = parts.length > 1 ? parts[1] : null;
+        final var line = msg.trim();
+        var commandEnd = 0;
+        while (commandEnd < line.length() && !Character.isWhitespace(line.charAt(commandEnd))) {
+            commandEnd++;
+        }
+        // plain messages are dispatched without extracting command and argument
+        final var command = line.startsWith("/") ? line.substring(0, commandEnd) : "";
+        var argumentStart = commandEnd;
+        while (argumentStart < line.length() && Character.isWhitespace(line.charAt(argumentStart))) {
+            argumentStart++;
+        }
+        final var argument = command.isEmpty() || argumentStart == line.length() ? null : line.substring(argumentStart);
         var user = ctx.channel().attr(USER_KEY).get();
 
+        final var event = new CommandEvent();
+        event.begin();
         switch (command) {
             case "/login" -> chatService.handleLogin(ctx, storage, argument);
             case "/join" -> chatService.handleJoin(ctx, storage, user, argument);
-            case "/leave" -> chatService.handleLeave(ctx, storage, user);
+            case "/leave" -> chatService.handleLeave(ctx, storage, user, argument);
+            case "/target" -> chatService.handleTarget(ctx, storage, user, argument);
             case "/disconnect" -> chatService.logout(ctx, storage, user);
-            case "/list" -> chatService.listChannels(ctx, storage);
+            case "/list" -> chatService.listChannels(ctx, storage, argument);
             case "/users" -> chatService.listUsers(ctx, storage, user);
+            case "/search" -> chatService.search(ctx, storage, user, argument);
             default -> chatService.sendMessage(ctx, storage, user, msg);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = command.isEmpty() ? "message" : command;
+            event.channel = channelArgument(command, argument);
+            event.commit();
+        }
+    }
+
+    /**
+     * @return name of the channel the command is given, or null if it works on the current channel
+     */
+    private static String channelArgument(final String command, final String argument) {
+        if (argument == null || !(command.equals("/join") || command.equals("/leave") || command.equals("/target"))) {
+            return null;
+        }
+        var nameEnd = 0;
+        while (nameEnd < argument.length() && !Character.isWhitespace(argument.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        return argument.substring(0, nameEnd);
     }
 
     @Override
     public void channelInactive(final ChannelHandlerContext ctx) {
-        chatService.logout(ctx, storage, storage.getUserByChannel(ctx.channel()));
+        chatService.logout(ctx, storage);
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package chat.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Periodic throughput and lag of the audit log writer.
+ */
+@Name("chat.AuditLog")
+@Label("Audit Log")
+@Category("Chat")
+@Period("1 s")
+@StackTrace(false)
+public class AuditLogEvent extends Event {
+
+    @Label("Events per Second")
+    public long eventsPerSecond;
+
+    @Label("Written Events")
+    public long writtenEvents;
+
+    @Label("Written Bytes")
+    @DataAmount
+    public long writtenBytes;
+
+    @Label("Dropped Events")
+    public long droppedEvents;
+
+    @Label("Pending Events")
+    public long pendingEvents;
+
+    @Label("Lag")
+    @Timespan(Timespan.MILLISECONDS)
+    public long lagMillis;
+}
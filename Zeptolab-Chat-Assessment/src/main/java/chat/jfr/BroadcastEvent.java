@@ -0,0 +1,27 @@
+package chat.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Fan-out of a message to members of a chat channel.
+ */
+@Name("chat.Broadcast")
+@Label("Broadcast")
+@Category("Chat")
+@StackTrace(false)
+public class BroadcastEvent extends Event {
+
+    @Label("Channel")
+    public String channel;
+
+    @Label("Recipients")
+    public int recipients;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Lock Wait")
+    @Timespan
+    public long lockWait;
+}
@@ -0,0 +1,22 @@
+package chat.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Dispatch of a single client line by {@link chat.handler.ChatHandler}.
+ */
+@Name("chat.Command")
+@Label("Command")
+@Category("Chat")
+@StackTrace(false)
+public class CommandEvent extends Event {
+
+    @Label("Command")
+    public String command;
+
+    /**
+     * Channel named by the command, such as the one joined, if any.
+     */
+    @Label("Channel")
+    public String channel;
+}
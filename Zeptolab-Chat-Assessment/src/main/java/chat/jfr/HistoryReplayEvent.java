@@ -0,0 +1,29 @@
+package chat.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Replay of channel history to a user who has joined it.
+ */
+@Name("chat.HistoryReplay")
+@Label("History Replay")
+@Category("Chat")
+@StackTrace(false)
+public class HistoryReplayEvent extends Event {
+
+    @Label("Channel")
+    public String channel;
+
+    @Label("Messages")
+    public int messages;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Resumed")
+    public boolean resumed;
+
+    @Label("Gap")
+    public boolean gap;
+}
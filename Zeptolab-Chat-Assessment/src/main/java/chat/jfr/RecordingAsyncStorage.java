@@ -0,0 +1,183 @@
+package chat.jfr;
+
+import chat.data.AsyncStorage;
+import chat.model.ChatChannel;
+import chat.model.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncStorage} decorator that records a {@link StorageEvent} for every call.
+ * When the event is disabled, calls go straight to the delegate.
+ */
+public class RecordingAsyncStorage implements AsyncStorage {
+
+    private final AsyncStorage storage;
+
+    public RecordingAsyncStorage(final AsyncStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public CompletionStage<Collection<ChatChannel>> getChatChannels() {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getChatChannels", storage.getChatChannels());
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getChatChannel(final String name) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getChatChannel", storage.getChatChannel(name));
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getOrAddChatChannel(final String name,
+                                                            final Function<String, ChatChannel> factory) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getOrAddChatChannel", storage.getOrAddChatChannel(name, factory));
+    }
+
+    @Override
+    public CompletionStage<User> createUser(final ChannelHandlerContext ctx, final String username, final String password) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "createUser", storage.createUser(ctx, username, password));
+    }
+
+    @Override
+    public CompletionStage<User> getUserByName(final String username) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getUserByName", storage.getUserByName(username));
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getUserList(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getUserList", storage.getUserList(user));
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getChatChannelList() {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getChatChannelList", storage.getChatChannelList());
+    }
+
+    @Override
+    public CompletionStage<ByteBuf> getChatChannelList(final String prefix, final int offset, final int limit) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getChatChannelList", storage.getChatChannelList(prefix, offset, limit));
+    }
+
+    @Override
+    public CompletionStage<ChatChannel> getCurrentChatChannel(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getCurrentChatChannel", storage.getCurrentChatChannel(user));
+    }
+
+    @Override
+    public CompletionStage<List<ChatChannel>> getUserChatChannels(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getUserChatChannels", storage.getUserChatChannels(user));
+    }
+
+    @Override
+    public CompletionStage<Boolean> anyChannelContainsUser(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "anyChannelContainsUser", storage.anyChannelContainsUser(user));
+    }
+
+    @Override
+    public CompletionStage<Void> removeUserFromChannels(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "removeUserFromChannels", storage.removeUserFromChannels(user));
+    }
+
+    @Override
+    public CompletionStage<Void> removeUserFromChannel(final User user, final ChatChannel channel) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "removeUserFromChannel", storage.removeUserFromChannel(user, channel));
+    }
+
+    @Override
+    public CompletionStage<Void> removeChannelFromUser(final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "removeChannelFromUser", storage.removeChannelFromUser(user));
+    }
+
+    @Override
+    public CompletionStage<Void> addChatChannelToUser(final User user, final ChatChannel channel) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "addChatChannelToUser", storage.addChatChannelToUser(user, channel));
+    }
+
+    @Override
+    public CompletionStage<Void> addChatChannel(final ChatChannel channel) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "addChatChannel", storage.addChatChannel(channel));
+    }
+
+    @Override
+    public CompletionStage<Void> loginUser(final Channel channel, final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "loginUser", storage.loginUser(channel, user));
+    }
+
+    @Override
+    public CompletionStage<Void> logoutUser(final ChannelHandlerContext ctx, final User user) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "logoutUser", storage.logoutUser(ctx, user));
+    }
+
+    @Override
+    public CompletionStage<User> getUserByChannel(final Channel channel) {
+        final var event = new StorageEvent();
+        event.begin();
+        return record(event, "getUserByChannel", storage.getUserByChannel(channel));
+    }
+
+    private static <T> CompletionStage<T> record(final StorageEvent event, final String operation,
+                                                 final CompletionStage<T> stage) {
+        if (!event.isEnabled()) {
+            return stage;
+        }
+        final var future = stage.toCompletableFuture();
+        if (future.isDone()) {
+            commit(event, operation, future.isCompletedExceptionally());
+        } else {
+            future.whenComplete((result, error) -> commit(event, operation, error != null));
+        }
+        return stage;
+    }
+
+    private static void commit(final StorageEvent event, final String operation, final boolean failed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
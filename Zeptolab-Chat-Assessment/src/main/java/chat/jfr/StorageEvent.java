@@ -0,0 +1,19 @@
+package chat.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Storage call, from the call until its stage has completed.
+ */
+@Name("chat.Storage")
+@Label("Storage Call")
+@Category("Chat")
+@StackTrace(false)
+public class StorageEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,72 @@
+package chat.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.util.Arrays;
+
+/**
+ * Message written to every user of a chat channel. The text is encoded at most once per
+ * {@link BroadcastEncoder} and the encoded buffer is shared by recipients as retained duplicates.
+ * Not thread safe, it is only used by the thread fanning the message out, which must {@link #release()} it.
+ */
+public class Broadcast {
+
+    private final String text;
+    private final int recipients;
+    private BroadcastEncoder[] encoders;
+    private ByteBuf[] encoded;
+    private int encodings;
+
+    public Broadcast(final String text, final int recipients) {
+        this.text = text;
+        this.recipients = recipients;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return message to write to the connection, which takes ownership of it
+     */
+    public Object messageFor(final Channel channel) {
+        final var encoder = channel.hasAttr(BroadcastEncoder.KEY) ? channel.attr(BroadcastEncoder.KEY).get() : null;
+        if (encoder == null) {
+            return text;
+        }
+        final var shared = encodedBy(encoder);
+        return shared == null ? text : encoder.message(shared.retainedDuplicate());
+    }
+
+    /**
+     * Releases encoded buffers, recipients keep their duplicates until written.
+     */
+    public void release() {
+        for (int i = 0; i < encodings; i++) {
+            if (encoded[i] != null) {
+                encoded[i].release();
+            }
+        }
+        encodings = 0;
+    }
+
+    private ByteBuf encodedBy(final BroadcastEncoder encoder) {
+        for (int i = 0; i < encodings; i++) {
+            if (encoders[i] == encoder) {
+                return encoded[i];
+            }
+        }
+        if (encoders == null) {
+            encoders = new BroadcastEncoder[2];
+            encoded = new ByteBuf[2];
+        } else if (encodings == encoders.length) {
+            encoders = Arrays.copyOf(encoders, encodings << 1);
+            encoded = Arrays.copyOf(encoded, encodings << 1);
+        }
+        final var buffer = encoder.encode(text, recipients);
+        encoders[encodings] = encoder;
+        encoded[encodings++] = buffer;
+        return buffer;
+    }
+}
@@ -0,0 +1,27 @@
+package chat.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AttributeKey;
+
+/**
+ * Wire encoding of broadcast messages for connections of one transport. Set on a connection with
+ * {@link #KEY}, connections without it receive broadcasts as strings.
+ */
+public interface BroadcastEncoder {
+
+    AttributeKey<BroadcastEncoder> KEY = AttributeKey.valueOf("broadcastEncoder");
+
+    /**
+     * Encodes broadcast text once for all recipients on connections using this encoder.
+     *
+     * @return encoded text, or null to write the text to every recipient as is
+     */
+    ByteBuf encode(String text, int recipients);
+
+    /**
+     * Wraps a retained duplicate of the encoded text into the message written to one connection.
+     */
+    default Object message(final ByteBuf encoded) {
+        return encoded;
+    }
+}
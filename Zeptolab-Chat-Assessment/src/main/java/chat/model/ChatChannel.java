@@ -1,55 +1,298 @@
 package chat.model;
 
+import chat.jfr.BroadcastEvent;
+import chat.search.IndexBudget;
+import chat.search.MessageIndex;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChatChannel {
 
+    private static final AtomicInteger ID_SEQUENCE = new AtomicInteger();
+
+    private final int id;
     private final String name;
-    private final Set<User> users;
+    private final IntObjectMap<User> users;
     private final List<String> messages;
     private final int maxMessageCount;
+    private final MessageIndex index;
+    private final ChatChannelListener listener;
+    private final String tag;
+    private final boolean numberLines;
+    private long firstSequence = 1;
+    private long version;
+    private boolean evicted;
+    private ByteBuf usersResponse;
+    private long usersResponseVersion = -1;
 
     public ChatChannel(final String name, final int maxMessageCount) {
+        this(name, maxMessageCount, ChatChannelListener.NONE);
+    }
+
+    public ChatChannel(final String name, final int maxMessageCount, final ChatChannelListener listener) {
+        this(name, maxMessageCount, listener, false);
+    }
+
+    /**
+     * @param tagLines whether lines sent to users start with the channel name, for users in several channels
+     */
+    public ChatChannel(final String name, final int maxMessageCount, final ChatChannelListener listener,
+                       final boolean tagLines) {
+        this(name, maxMessageCount, listener, tagLines, false);
+    }
+
+    /**
+     * @param tagLines    whether lines sent to users start with the channel name, for users in several channels
+     * @param numberLines whether messages sent to users start with their sequence number, such as {@code #12}
+     */
+    public ChatChannel(final String name, final int maxMessageCount, final ChatChannelListener listener,
+                       final boolean tagLines, final boolean numberLines) {
+        this(name, maxMessageCount, listener, tagLines, numberLines, new IndexBudget(Long.MAX_VALUE));
+    }
+
+    /**
+     * @param tagLines    whether lines sent to users start with the channel name, for users in several channels
+     * @param numberLines whether messages sent to users start with their sequence number, such as {@code #12}
+     * @param indexBudget search index memory shared with other channels of the server
+     */
+    public ChatChannel(final String name, final int maxMessageCount, final ChatChannelListener listener,
+                       final boolean tagLines, final boolean numberLines, final IndexBudget indexBudget) {
+        this.numberLines = numberLines;
+        this.tag = tagLines ? "[" + name + "] " : null;
+        this.id = ID_SEQUENCE.getAndIncrement();
         this.name = name;
-        this.users = new HashSet<>();
+        this.users = new IntObjectHashMap<>(16);
         this.messages = new ArrayList<>();
         this.maxMessageCount = maxMessageCount;
+        this.index = new MessageIndex(indexBudget);
+        this.listener = listener;
+    }
+
+    /**
+     * Dense identifier assigned on creation, used as a key in primitive-keyed structures.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return snapshot of channel users, which callers can iterate while users join and leave
+     */
+    public synchronized Collection<User> getUsers() {
+        return List.copyOf(users.values());
     }
 
-    public Set<User> getUsers() {
-        return Collections.unmodifiableSet(users);
+    public synchronized boolean containsUser(final User user) {
+        return users.containsKey(user.getId());
     }
 
+    /**
+     * @return false if the channel is full, the user is already in it, or it has been evicted
+     */
     public synchronized boolean addUser(final User user) {
-        if (users.size() < 10) {
-            return users.add(user);
+        if (!evicted && users.size() < 10 && !users.containsKey(user.getId())) {
+            users.put(user.getId(), user);
+            version++;
+            listener.userJoined(this, user);
+            return true;
         }
         return false;
     }
 
     public synchronized void removeUser(final User user) {
-        users.remove(user);
+        if (users.remove(user.getId()) != null) {
+            version++;
+            listener.userLeft(this, user);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return users.isEmpty();
+    }
+
+    /**
+     * Marks the channel as evicted if it has no users. Nobody can join an evicted channel, its name is looked up
+     * again instead, which gives a new channel with the history of this one.
+     *
+     * @return whether the channel has been evicted
+     */
+    public synchronized boolean evict() {
+        if (users.isEmpty()) {
+            evicted = true;
+        }
+        return evicted;
     }
 
-    public synchronized void write(final User user, final String message) {
-        users.stream().flatMap(u -> u.getChannels().stream())
-                .forEach(ch -> ch.writeAndFlush(String.format("%s: %s%s", user, message, System.lineSeparator())));
-        addMessage(user.getUsername() + ": " + message);
+    public synchronized boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Membership version, incremented every time a user joins or leaves the channel.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns encoded list of channel users, one per line. The buffer is shared between callers and only
+     * rebuilt when membership has changed since the last call, so every call returns a retained duplicate
+     * that the caller is responsible for writing or releasing.
+     */
+    public synchronized ByteBuf getUsersResponse() {
+        if (usersResponseVersion != version) {
+            final var response = Unpooled.buffer();
+            for (final User u : users.values()) {
+                ByteBufUtil.writeUtf8(response, u.getUsername());
+                ByteBufUtil.writeUtf8(response, System.lineSeparator());
+            }
+            if (usersResponse != null) {
+                usersResponse.release();
+            }
+            usersResponse = response;
+            usersResponseVersion = version;
+        }
+        return usersResponse.retainedDuplicate();
+    }
+
+    public void write(final User user, final String message) {
+        final var event = new BroadcastEvent();
+        event.begin();
+        final var lockRequested = event.isEnabled() ? System.nanoTime() : 0;
+        synchronized (this) {
+            if (event.isEnabled()) {
+                event.lockWait = System.nanoTime() - lockRequested;
+            }
+            final var line = user + ": " + message;
+            final var frame = fanOut(line);
+            listener.messageWritten(this, user, message, line);
+            event.end();
+            if (event.shouldCommit()) {
+                event.channel = name;
+                event.recipients = users.size();
+                event.bytesWritten = (long) ByteBufUtil.utf8Bytes(frame) * users.size();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Sends message line written elsewhere, such as on another cluster node, to the channel users
+     * and adds it to history.
+     */
+    public synchronized void deliver(final String line) {
+        fanOut(line);
+    }
+
+    /**
+     * @return line as sent to users of the channel, starting with the channel name if lines are tagged
+     */
+    public String tagged(final String line) {
+        return tag == null ? line : tag + line;
+    }
+
+    /**
+     * @return message line as sent to users, starting with its sequence number if lines are numbered
+     */
+    public String numbered(final long sequence, final String line) {
+        return tagged(numberLines ? "#" + sequence + " " + line : line);
+    }
+
+    private String fanOut(final String line) {
+        final var frame = numbered(firstSequence + messages.size(), line) + System.lineSeparator();
+        final var broadcast = new Broadcast(frame, users.size());
+        try {
+            for (final User u : users.values()) {
+                u.broadcast(broadcast);
+            }
+        } finally {
+            broadcast.release();
+        }
+        addMessage(line);
+        return frame;
     }
 
     public synchronized void addMessage(final String message) {
         messages.add(message);
         if (messages.size() > maxMessageCount) {
             messages.remove(0);
+            firstSequence++;
         }
+        index.add(message);
+    }
+
+    /**
+     * Replaces empty history with history kept elsewhere, such as while the channel was evicted, so that
+     * sequence numbers continue where they've stopped.
+     */
+    public synchronized void restoreHistory(final History history) {
+        if (messages.isEmpty()) {
+            firstSequence = history.getFirstSequence();
+            history.getMessages().forEach(this::addMessage);
+        }
+    }
+
+    /**
+     * Searches whole indexed history of the channel, not only the last messages.
+     *
+     * @return messages containing all words of the query, newest first
+     */
+    public List<String> search(final String query, final int limit) {
+        return index.search(query, limit);
+    }
+
+    /**
+     * Frees the search index of an evicted channel and its share of the index budget.
+     */
+    public void releaseIndex() {
+        index.release();
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return snapshot of the last messages, which callers can iterate while messages are written
+     */
     public synchronized List<String> getMessages() {
-        return messages;
+        return List.copyOf(messages);
+    }
+
+    /**
+     * Sequence number of the last message written to the channel, 0 if there are none.
+     */
+    public synchronized long getLastSequence() {
+        return firstSequence + messages.size() - 1;
+    }
+
+    /**
+     * @return snapshot of the last messages with the sequence number of the first one
+     */
+    public synchronized History getHistory() {
+        return new History(firstSequence, List.copyOf(messages), false);
+    }
+
+    /**
+     * Messages written after the given sequence number, for a user who has seen messages up to it.
+     * If some of the following messages are no longer kept, or the sequence number is ahead of the channel,
+     * such as after a restart, all kept messages are returned and marked as a gap.
+     *
+     * @param seen sequence number of the last message the user has seen, 0 for none
+     */
+    public synchronized History getHistory(final long seen) {
+        final var next = firstSequence + messages.size();
+        if (seen + 1 < firstSequence || seen >= next) {
+            return new History(firstSequence, List.copyOf(messages), true);
+        }
+        final var missed = messages.subList((int) (seen + 1 - firstSequence), messages.size());
+        return new History(seen + 1, List.copyOf(missed), false);
     }
 
     @Override
@@ -0,0 +1,59 @@
+package chat.model;
+
+/**
+ * Observes membership and messages of chat channels. Methods are called while the channel is locked,
+ * so implementations must return quickly and must not call back into the channel.
+ */
+public interface ChatChannelListener {
+
+    ChatChannelListener NONE = new ChatChannelListener() {
+    };
+
+    default void userJoined(final ChatChannel channel, final User user) {
+    }
+
+    default void userLeft(final ChatChannel channel, final User user) {
+    }
+
+    /**
+     * Called for messages written by local users, not for ones {@link ChatChannel#deliver delivered} from elsewhere.
+     *
+     * @param message text written by the user
+     * @param line    message line as sent to channel users
+     */
+    default void messageWritten(final ChatChannel channel, final User user, final String message, final String line) {
+    }
+
+    /**
+     * @return listener that notifies this listener and then the other one
+     */
+    default ChatChannelListener andThen(final ChatChannelListener other) {
+        if (other == NONE) {
+            return this;
+        }
+        if (this == NONE) {
+            return other;
+        }
+        final var first = this;
+        return new ChatChannelListener() {
+            @Override
+            public void userJoined(final ChatChannel channel, final User user) {
+                first.userJoined(channel, user);
+                other.userJoined(channel, user);
+            }
+
+            @Override
+            public void userLeft(final ChatChannel channel, final User user) {
+                first.userLeft(channel, user);
+                other.userLeft(channel, user);
+            }
+
+            @Override
+            public void messageWritten(final ChatChannel channel, final User user, final String message,
+                                       final String line) {
+                first.messageWritten(channel, user, message, line);
+                other.messageWritten(channel, user, message, line);
+            }
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package chat.model;
+
+import java.util.List;
+
+/**
+ * Messages of a channel history with the sequence number of the first of them. Messages are numbered
+ * per channel from 1, every message one more than the previous.
+ */
+public class History {
+
+    private final long firstSequence;
+    private final List<String> messages;
+    private final boolean gap;
+
+    /**
+     * @param firstSequence sequence number of the first message, or of the next message if there are none
+     * @param gap           whether messages the caller asked for are no longer kept
+     */
+    public History(final long firstSequence, final List<String> messages, final boolean gap) {
+        this.firstSequence = firstSequence;
+        this.messages = messages;
+        this.gap = gap;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Whether some messages following the sequence number the caller has seen are no longer kept,
+     * or the channel doesn't know that sequence number, so the caller can't rely on what it has seen.
+     */
+    public boolean isGap() {
+        return gap;
+    }
+}
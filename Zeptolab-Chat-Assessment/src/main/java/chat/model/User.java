@@ -2,19 +2,29 @@ package chat.model;
 
 import io.netty.channel.Channel;
 
-import java.util.HashSet;
 import java.util.Set;
 
 public class User {
 
+    private static final Channel[] NO_CHANNELS = new Channel[0];
+
+    private final int id;
     private final String username;
     private final String password;
-    private final Set<Channel> channels;
+    private volatile Channel[] channels;
 
-    public User(final String username, final String password) {
+    public User(final int id, final String username, final String password) {
+        this.id = id;
         this.username = username;
         this.password = password;
-        channels = new HashSet<>();
+        channels = NO_CHANNELS;
+    }
+
+    /**
+     * Dense identifier assigned by the storage on creation, used as a key in primitive-keyed structures.
+     */
+    public int getId() {
+        return id;
     }
 
     public String getUsername() {
@@ -28,15 +38,14 @@ public class User {
     @Override
     public boolean equals(final Object obj) {
         if (obj instanceof User user) {
-            return username.equalsIgnoreCase(user.getUsername())
-                    && password.equals(user.getPassword());
+            return id == user.getId();
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return username.toLowerCase().hashCode() * password.hashCode();
+        return id;
     }
 
     @Override
@@ -45,14 +54,54 @@ public class User {
     }
 
     public Set<Channel> getChannels() {
-        return Set.copyOf(channels);
+        return Set.of(channels);
     }
 
-    public void addChannel(final Channel channel) {
-        channels.add(channel);
+    public boolean hasChannels() {
+        return channels.length != 0;
     }
 
-    public void removeChannel(final Channel channel) {
-        channels.remove(channel);
+    /**
+     * Writes message to every connection this user is logged in from.
+     */
+    public void writeAndFlush(final Object message) {
+        for (final Channel channel : channels) {
+            channel.writeAndFlush(message);
+        }
+    }
+
+    /**
+     * Writes broadcast to every connection this user is logged in from, in the encoding of each connection.
+     */
+    public void broadcast(final Broadcast broadcast) {
+        for (final Channel channel : channels) {
+            channel.writeAndFlush(broadcast.messageFor(channel));
+        }
+    }
+
+    public synchronized void addChannel(final Channel channel) {
+        final var current = channels;
+        for (final Channel ch : current) {
+            if (ch == channel) {
+                return;
+            }
+        }
+        final var updated = new Channel[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = channel;
+        channels = updated;
+    }
+
+    public synchronized void removeChannel(final Channel channel) {
+        final var current = channels;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == channel) {
+                final var updated = new Channel[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                channels = updated;
+                return;
+            }
+        }
     }
 }
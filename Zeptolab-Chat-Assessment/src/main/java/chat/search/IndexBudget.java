@@ -0,0 +1,81 @@
+package chat.search;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by message indexes, one per server. Indexes charge it for their sealed segments,
+ * and while the total is over the limit the oldest segment of the largest index is evicted, so index memory
+ * stays bounded however many channels there are.
+ */
+public class IndexBudget {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private volatile long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Set<MessageIndex> indexes = ConcurrentHashMap.newKeySet();
+
+    public IndexBudget(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Number of indexes holding sealed segments, for monitoring.
+     */
+    public int getIndexCount() {
+        return indexes.size();
+    }
+
+    /**
+     * Records that the index has grown or shrunk by the given number of bytes.
+     */
+    void charge(final MessageIndex index, final long bytes) {
+        if (bytes > 0) {
+            indexes.add(index);
+        }
+        usedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Forgets the index, whose segments are no longer charged.
+     */
+    void release(final MessageIndex index, final long bytes) {
+        indexes.remove(index);
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Evicts oldest segments of the largest indexes while the budget is exceeded. Called by indexes after
+     * they've grown, without holding their own lock.
+     */
+    synchronized void reclaim() {
+        while (usedBytes.get() > maxBytes) {
+            MessageIndex largest = null;
+            var largestBytes = 0L;
+            for (final MessageIndex index : indexes) {
+                final var bytes = index.sizeInBytes();
+                if (bytes > largestBytes) {
+                    largest = index;
+                    largestBytes = bytes;
+                }
+            }
+            if (largest == null || !largest.evictOldestSegment()) {
+                return;
+            }
+        }
+    }
+}
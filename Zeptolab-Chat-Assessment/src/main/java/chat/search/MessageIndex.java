@@ -0,0 +1,233 @@
+package chat.search;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Incremental inverted index over messages of a chat channel.
+ * Messages are appended to a small pending batch, which is turned into an immutable {@link Segment}
+ * on the indexer thread once full. The indexer also merges adjacent small segments and evicts
+ * the oldest ones when the index grows over its size limit, so adding a message costs an array store.
+ * Sealed segments are also charged to an {@link IndexBudget} shared with other indexes, which may evict
+ * the oldest segments of the largest index to keep the total bounded.
+ */
+public class MessageIndex {
+
+    public static final int SEGMENT_SIZE = 128;
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MAX_MERGED_SEGMENT_SIZE = SEGMENT_SIZE * 32;
+    private static final Executor INDEXER =
+            Executors.newSingleThreadExecutor(new DefaultThreadFactory("chat-search-indexer", true));
+
+    private final long maxBytes;
+    private final Executor indexer;
+    private final IndexBudget budget;
+    // serializes replacing segments by sealing and by the budget, which may run on different threads
+    private final Object segmentsLock = new Object();
+    private String[] pending = new String[SEGMENT_SIZE];
+    private int pendingCount;
+    private final Deque<String[]> sealing = new ArrayDeque<>();
+    // only replaced under segmentsLock, oldest segment first
+    private volatile Segment[] segments = new Segment[0];
+    private long bytes;
+    private long evictedMessages;
+    private boolean released;
+
+    public MessageIndex() {
+        this(new IndexBudget(Long.MAX_VALUE));
+    }
+
+    /**
+     * @param budget size limit shared with other indexes of the server
+     */
+    public MessageIndex(final IndexBudget budget) {
+        this(DEFAULT_MAX_BYTES, INDEXER, budget);
+    }
+
+    public MessageIndex(final long maxBytes, final Executor indexer) {
+        this(maxBytes, indexer, new IndexBudget(Long.MAX_VALUE));
+    }
+
+    /**
+     * @param maxBytes size limit of this index
+     * @param budget   size limit shared with other indexes
+     */
+    public MessageIndex(final long maxBytes, final Executor indexer, final IndexBudget budget) {
+        this.maxBytes = maxBytes;
+        this.indexer = indexer;
+        this.budget = budget;
+    }
+
+    public synchronized void add(final String message) {
+        pending[pendingCount++] = message;
+        if (pendingCount == SEGMENT_SIZE) {
+            final var batch = pending;
+            pending = new String[SEGMENT_SIZE];
+            pendingCount = 0;
+            sealing.addLast(batch);
+            indexer.execute(() -> seal(batch));
+        }
+    }
+
+    /**
+     * Finds messages containing all words of the query, newest first.
+     */
+    public List<String> search(final String query, final int limit) {
+        final var terms = Arrays.stream(tokenize(query)).distinct().toArray(String[]::new);
+        final var results = new ArrayList<String>();
+        if (terms.length == 0) {
+            return results;
+        }
+        final String[] unsealed;
+        final Segment[] sealed;
+        synchronized (this) {
+            final var unsealedCount = pendingCount + sealing.size() * SEGMENT_SIZE;
+            unsealed = new String[unsealedCount];
+            var i = 0;
+            for (final String[] batch : sealing) {
+                System.arraycopy(batch, 0, unsealed, i, SEGMENT_SIZE);
+                i += SEGMENT_SIZE;
+            }
+            System.arraycopy(pending, 0, unsealed, i, pendingCount);
+            sealed = segments;
+        }
+        final var termList = Arrays.asList(terms);
+        for (int i = unsealed.length - 1; i >= 0 && results.size() < limit; i--) {
+            if (Arrays.asList(tokenize(unsealed[i])).containsAll(termList)) {
+                results.add(unsealed[i]);
+            }
+        }
+        for (int i = sealed.length - 1; i >= 0 && results.size() < limit; i--) {
+            sealed[i].collect(terms, limit, results);
+        }
+        return results;
+    }
+
+    /**
+     * Number of messages currently searchable.
+     */
+    public synchronized int size() {
+        var size = pendingCount + sealing.size() * SEGMENT_SIZE;
+        for (final Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    public synchronized long getEvictedMessages() {
+        return evictedMessages;
+    }
+
+    /**
+     * Drops all segments and stops charging the budget, for an index of a channel that is gone.
+     */
+    public synchronized void release() {
+        released = true;
+        segments = new Segment[0];
+        budget.release(this, bytes);
+        bytes = 0;
+    }
+
+    /**
+     * Evicts the oldest sealed segment on behalf of the budget.
+     *
+     * @return false if there was no segment to evict
+     */
+    boolean evictOldestSegment() {
+        synchronized (segmentsLock) {
+            synchronized (this) {
+                final var current = segments;
+                if (current.length == 0) {
+                    return false;
+                }
+                evictedMessages += current[0].size();
+                bytes -= current[0].sizeInBytes();
+                budget.charge(this, -current[0].sizeInBytes());
+                segments = Arrays.copyOfRange(current, 1, current.length);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Splits text into lower case words.
+     */
+    static String[] tokenize(final String text) {
+        final var terms = new ArrayList<String>();
+        var start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final var wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms.toArray(String[]::new);
+    }
+
+    private void seal(final String[] batch) {
+        final var segment = Segment.build(batch);
+        synchronized (segmentsLock) {
+            final var current = segments;
+            final var updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = segment;
+            publish(merge(updated), batch);
+        }
+        budget.reclaim();
+    }
+
+    /**
+     * Merges the adjacent pair of segments with the fewest messages while there are too many segments.
+     */
+    private static Segment[] merge(Segment[] current) {
+        while (current.length > MAX_SEGMENTS) {
+            var smallest = -1;
+            for (int i = 0; i + 1 < current.length; i++) {
+                final var size = current[i].size() + current[i + 1].size();
+                if (size <= MAX_MERGED_SEGMENT_SIZE
+                        && (smallest < 0 || size < current[smallest].size() + current[smallest + 1].size())) {
+                    smallest = i;
+                }
+            }
+            if (smallest < 0) {
+                break;
+            }
+            final var merged = new Segment[current.length - 1];
+            System.arraycopy(current, 0, merged, 0, smallest);
+            merged[smallest] = Segment.merge(current[smallest], current[smallest + 1]);
+            System.arraycopy(current, smallest + 2, merged, smallest + 1, current.length - smallest - 2);
+            current = merged;
+        }
+        return current;
+    }
+
+    private synchronized void publish(final Segment[] updated, final String[] sealedBatch) {
+        sealing.remove(sealedBatch);
+        if (released) {
+            return;
+        }
+        var evictFrom = 0;
+        var size = 0L;
+        for (final Segment segment : updated) {
+            size += segment.sizeInBytes();
+        }
+        while (size > maxBytes && evictFrom < updated.length - 1) {
+            size -= updated[evictFrom].sizeInBytes();
+            evictedMessages += updated[evictFrom].size();
+            evictFrom++;
+        }
+        segments = Arrays.copyOfRange(updated, evictFrom, updated.length);
+        budget.charge(this, size - bytes);
+        bytes = size;
+    }
+}
@@ -0,0 +1,174 @@
+package chat.search;
+
+import java.util.*;
+
+/**
+ * Immutable part of a {@link MessageIndex}: a batch of messages with a sorted term dictionary
+ * and postings stored as variable-length encoded gaps between message positions.
+ */
+final class Segment {
+
+    private final String[] docs;
+    private final String[] terms;
+    private final int[] counts;
+    private final byte[][] postings;
+    private final long sizeInBytes;
+
+    private Segment(final String[] docs, final String[] terms, final int[] counts, final byte[][] postings) {
+        this.docs = docs;
+        this.terms = terms;
+        this.counts = counts;
+        this.postings = postings;
+        var size = 0L;
+        for (final String doc : docs) {
+            size += stringSize(doc);
+        }
+        for (int i = 0; i < terms.length; i++) {
+            size += stringSize(terms[i]) + 16 + postings[i].length;
+        }
+        this.sizeInBytes = size;
+    }
+
+    static Segment build(final String[] docs) {
+        final var writers = new TreeMap<String, PostingWriter>();
+        for (int doc = 0; doc < docs.length; doc++) {
+            for (final String term : MessageIndex.tokenize(docs[doc])) {
+                writers.computeIfAbsent(term, t -> new PostingWriter()).add(doc);
+            }
+        }
+        return fromWriters(docs, writers);
+    }
+
+    /**
+     * Merges two adjacent segments, positions of the newer one are shifted past the older one.
+     */
+    static Segment merge(final Segment older, final Segment newer) {
+        final var docs = new String[older.docs.length + newer.docs.length];
+        System.arraycopy(older.docs, 0, docs, 0, older.docs.length);
+        System.arraycopy(newer.docs, 0, docs, older.docs.length, newer.docs.length);
+        final var writers = new TreeMap<String, PostingWriter>();
+        for (int i = 0; i < older.terms.length; i++) {
+            final var writer = writers.computeIfAbsent(older.terms[i], t -> new PostingWriter());
+            for (final int doc : older.decode(i)) {
+                writer.add(doc);
+            }
+        }
+        for (int i = 0; i < newer.terms.length; i++) {
+            final var writer = writers.computeIfAbsent(newer.terms[i], t -> new PostingWriter());
+            for (final int doc : newer.decode(i)) {
+                writer.add(older.docs.length + doc);
+            }
+        }
+        return fromWriters(docs, writers);
+    }
+
+    int size() {
+        return docs.length;
+    }
+
+    long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Adds messages containing all terms to results, newest first, until there are limit results.
+     */
+    void collect(final String[] queryTerms, final int limit, final List<String> results) {
+        final var matches = new int[queryTerms.length][];
+        for (int i = 0; i < queryTerms.length; i++) {
+            final var termIndex = Arrays.binarySearch(terms, queryTerms[i]);
+            if (termIndex < 0) {
+                return;
+            }
+            matches[i] = decode(termIndex);
+        }
+        Arrays.sort(matches, Comparator.comparingInt(m -> m.length));
+        var candidates = matches[0];
+        for (int i = 1; i < matches.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, matches[i]);
+        }
+        for (int i = candidates.length - 1; i >= 0 && results.size() < limit; i--) {
+            results.add(docs[candidates[i]]);
+        }
+    }
+
+    private int[] decode(final int termIndex) {
+        final var bytes = postings[termIndex];
+        final var docIds = new int[counts[termIndex]];
+        var doc = 0;
+        var position = 0;
+        for (int i = 0; i < docIds.length; i++) {
+            var gap = 0;
+            var shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += gap;
+            docIds[i] = doc;
+        }
+        return docIds;
+    }
+
+    private static int[] intersect(final int[] left, final int[] right) {
+        final var result = new int[Math.min(left.length, right.length)];
+        var count = 0;
+        for (int i = 0, j = 0; i < left.length && j < right.length; ) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static Segment fromWriters(final String[] docs, final SortedMap<String, PostingWriter> writers) {
+        final var terms = new String[writers.size()];
+        final var counts = new int[writers.size()];
+        final var postings = new byte[writers.size()][];
+        var i = 0;
+        for (final var entry : writers.entrySet()) {
+            terms[i] = entry.getKey();
+            counts[i] = entry.getValue().count;
+            postings[i] = Arrays.copyOf(entry.getValue().bytes, entry.getValue().length);
+            i++;
+        }
+        return new Segment(docs, terms, counts, postings);
+    }
+
+    private static long stringSize(final String value) {
+        return 40 + value.length();
+    }
+
+    private static final class PostingWriter {
+
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int count;
+        private int lastDoc;
+
+        void add(final int doc) {
+            if (count > 0 && doc == lastDoc) {
+                return;
+            }
+            var gap = doc - lastDoc;
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length << 1);
+            }
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            lastDoc = doc;
+            count++;
+        }
+    }
+}
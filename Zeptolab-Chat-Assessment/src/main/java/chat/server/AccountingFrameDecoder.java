@@ -0,0 +1,40 @@
+package chat.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.Delimiters;
+
+/**
+ * Line frame decoder that reports bytes held in its cumulation buffer to {@link ConnectionMemoryTracker}.
+ */
+public class AccountingFrameDecoder extends DelimiterBasedFrameDecoder {
+
+    private final ConnectionMemoryTracker tracker;
+    private long bufferedBytes;
+
+    public AccountingFrameDecoder(final int maxFrameLength, final ConnectionMemoryTracker tracker) {
+        super(maxFrameLength, Delimiters.lineDelimiter());
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+        super.channelRead(ctx, msg);
+        account(ctx, actualReadableBytes());
+    }
+
+    @Override
+    protected void handlerRemoved0(final ChannelHandlerContext ctx) throws Exception {
+        account(ctx, 0);
+        super.handlerRemoved0(ctx);
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private void account(final ChannelHandlerContext ctx, final long buffered) {
+        tracker.addInbound(ctx.channel(), buffered - bufferedBytes);
+        bufferedBytes = buffered;
+    }
+}
@@ -0,0 +1,138 @@
+package chat.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server channel handler that decides whether accepted connections are handed over to the child pipeline.
+ * Connections over the global or per-address limits are reset right away. When accept rate exceeds
+ * the token bucket, the connection is reset and accepting is paused until a token is available again,
+ * so the rest of a reconnect storm waits in the listen backlog instead of getting a pipeline.
+ */
+public class AdmissionControlHandler extends ChannelInboundHandlerAdapter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final long nanosPerToken;
+    private final long maxTokenNanos;
+    // token bucket is only accessed from the server channel event loop
+    private long tokenNanos;
+    private long lastRefill;
+    private boolean acceptsPaused;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final Map<Object, Integer> connectionsPerAddress = new ConcurrentHashMap<>();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedByCapacity = new LongAdder();
+    private final LongAdder rejectedByAddress = new LongAdder();
+    private final LongAdder rejectedByRate = new LongAdder();
+
+    public AdmissionControlHandler(final int maxConnections, final int maxConnectionsPerAddress,
+                                   final int acceptsPerSecond) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.nanosPerToken = NANOS_PER_SECOND / Math.max(1, acceptsPerSecond);
+        this.maxTokenNanos = nanosPerToken * Math.max(1, acceptsPerSecond);
+        this.tokenNanos = maxTokenNanos;
+        this.lastRefill = System.nanoTime();
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        final var child = (Channel) msg;
+        if (!tryAcquireToken()) {
+            rejectedByRate.increment();
+            refuse(child);
+            pauseAccepts(ctx);
+            return;
+        }
+        if (activeConnections.incrementAndGet() > maxConnections) {
+            activeConnections.decrementAndGet();
+            rejectedByCapacity.increment();
+            refuse(child);
+            return;
+        }
+        final var address = addressKey(child.remoteAddress());
+        if (connectionsPerAddress.merge(address, 1, Integer::sum) > maxConnectionsPerAddress) {
+            release(address);
+            rejectedByAddress.increment();
+            refuse(child);
+            return;
+        }
+        acceptedConnections.increment();
+        child.closeFuture().addListener(f -> release(address));
+        ctx.fireChannelRead(child);
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    public long getRejectedByCapacity() {
+        return rejectedByCapacity.sum();
+    }
+
+    public long getRejectedByAddress() {
+        return rejectedByAddress.sum();
+    }
+
+    public long getRejectedByRate() {
+        return rejectedByRate.sum();
+    }
+
+    private boolean tryAcquireToken() {
+        final var now = System.nanoTime();
+        tokenNanos = Math.min(maxTokenNanos, tokenNanos + (now - lastRefill));
+        lastRefill = now;
+        if (tokenNanos < nanosPerToken) {
+            return false;
+        }
+        tokenNanos -= nanosPerToken;
+        return true;
+    }
+
+    private void pauseAccepts(final ChannelHandlerContext ctx) {
+        if (acceptsPaused) {
+            return;
+        }
+        acceptsPaused = true;
+        ctx.channel().config().setAutoRead(false);
+        ctx.executor().schedule(() -> {
+            acceptsPaused = false;
+            ctx.channel().config().setAutoRead(true);
+        }, nanosPerToken - tokenNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void release(final Object address) {
+        activeConnections.decrementAndGet();
+        connectionsPerAddress.computeIfPresent(address, (a, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Closes connection with a reset, so that refused clients don't hold server sockets in TIME_WAIT.
+     */
+    private static void refuse(final Channel child) {
+        child.config().setOption(ChannelOption.SO_LINGER, 0);
+        child.unsafe().closeForcibly();
+    }
+
+    private static Object addressKey(final SocketAddress address) {
+        return address instanceof InetSocketAddress inetAddress ? inetAddress.getAddress() : address;
+    }
+}
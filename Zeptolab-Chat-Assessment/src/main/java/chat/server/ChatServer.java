@@ -1,33 +1,170 @@
 package chat.server;
 
+import chat.audit.AsyncAuditLog;
+import chat.cluster.ClusterNode;
+import chat.feed.RoomFeed;
+import chat.model.ChatChannelListener;
+import chat.websocket.WebSocketServerInitializer;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 
+import java.net.InetSocketAddress;
+
 public class ChatServer {
 
     private final int port;
+    private final AdmissionControlHandler admissionControl;
+    private final ChatServerInitializer initializer;
+    private final ClusterNode clusterNode;
+    private final RoomFeed roomFeed;
+    private final int webSocketPort;
+    private final AdmissionControlHandler webSocketAdmissionControl;
+    private final WebSocketServerInitializer webSocketInitializer;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workGroup;
+    private Channel serverChannel;
+    private Channel webSocketChannel;
 
     public static void main(String[] args) throws InterruptedException {
-        new ChatServer(8080).run();
+        new ChatServer(ChatServerConfig.fromSystemProperties()).run();
     }
 
     public ChatServer(final int port) {
-        this.port = port;
+        this(configForPort(port));
     }
 
-    public void run() throws InterruptedException {
-        final var bossGroup = new NioEventLoopGroup();
-        final var workGroup = new NioEventLoopGroup();
-        try {
-            final var bootstrap = new ServerBootstrap()
+    public ChatServer(final ChatServerConfig config) {
+        this.port = config.getPort();
+        this.admissionControl = new AdmissionControlHandler(config.getMaxConnections(),
+                config.getMaxConnectionsPerAddress(), config.getAcceptsPerSecond());
+        final var clusterNodes = ClusterNode.parseAddresses(config.getClusterNodes());
+        this.clusterNode = clusterNodes.isEmpty() ? null : new ClusterNode(config.getNodeId(), clusterNodes);
+        this.roomFeed = new RoomFeed(config.getFeedBufferSize());
+        this.initializer = new ChatServerInitializer(config,
+                roomFeed.andThen(clusterNode != null ? clusterNode : ChatChannelListener.NONE));
+        this.webSocketPort = config.getWebSocketPort();
+        this.webSocketAdmissionControl = new AdmissionControlHandler(config.getMaxConnections(),
+                config.getMaxConnectionsPerAddress(), config.getAcceptsPerSecond());
+        this.webSocketInitializer = new WebSocketServerInitializer(config, initializer);
+    }
+
+    /**
+     * Connection counters of the server, for monitoring.
+     */
+    public AdmissionControlHandler getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * Connection counters of the WebSocket listener, which has its own limits.
+     */
+    public AdmissionControlHandler getWebSocketAdmissionControl() {
+        return webSocketAdmissionControl;
+    }
+
+    /**
+     * Memory held by connections, for monitoring.
+     */
+    public ConnectionMemoryTracker getConnectionMemory() {
+        return initializer.getMemoryTracker();
+    }
+
+    /**
+     * Feed of room events for consumers running in the same JVM.
+     */
+    public RoomFeed getRoomFeed() {
+        return roomFeed;
+    }
+
+    /**
+     * @return audit log of the server, or null if it's disabled
+     */
+    public AsyncAuditLog getAuditLog() {
+        return initializer.getAuditLog();
+    }
+
+    /**
+     * @return cluster node of the server, or null if it's standalone
+     */
+    public ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+
+    /**
+     * Port the server is listening on, useful when it was configured with port 0.
+     */
+    public int getBoundPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * Port the WebSocket listener is bound to, or -1 if it's disabled.
+     */
+    public int getBoundWebSocketPort() {
+        return webSocketChannel == null ? -1 : ((InetSocketAddress) webSocketChannel.localAddress()).getPort();
+    }
+
+    /**
+     * Binds the server and joins the cluster, if configured, without waiting for the server to close.
+     */
+    public void start() throws InterruptedException {
+        bossGroup = new NioEventLoopGroup();
+        workGroup = new NioEventLoopGroup();
+        if (clusterNode != null) {
+            clusterNode.start(workGroup.next());
+        }
+        final var bootstrap = new ServerBootstrap()
+                .group(bossGroup, workGroup)
+                .channel(NioServerSocketChannel.class)
+                .handler(admissionControl)
+                .childHandler(initializer);
+        serverChannel = bootstrap.bind(port).sync().channel();
+        if (webSocketPort >= 0) {
+            webSocketChannel = new ServerBootstrap()
                     .group(bossGroup, workGroup)
                     .channel(NioServerSocketChannel.class)
-                    .childHandler(new ChatServerInitializer());
-            bootstrap.bind(port).sync().channel().closeFuture().sync();
-        } finally {
+                    .handler(webSocketAdmissionControl)
+                    .childHandler(webSocketInitializer)
+                    .bind(webSocketPort).sync().channel();
+        }
+    }
+
+    public void stop() {
+        if (webSocketChannel != null) {
+            webSocketChannel.close().syncUninterruptibly();
+        }
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        if (clusterNode != null) {
+            clusterNode.stop();
+        }
+        if (bossGroup != null) {
             bossGroup.shutdownGracefully();
+            workGroup.shutdownGracefully();
+        }
+        roomFeed.close();
+        initializer.stop();
+        if (initializer.getAuditLog() != null) {
+            initializer.getAuditLog().close();
         }
     }
 
+    public void run() throws InterruptedException {
+        try {
+            start();
+            serverChannel.closeFuture().sync();
+        } finally {
+            stop();
+        }
+    }
+
+    private static ChatServerConfig configForPort(final int port) {
+        final var config = ChatServerConfig.fromSystemProperties();
+        config.setPort(port);
+        return config;
+    }
 }
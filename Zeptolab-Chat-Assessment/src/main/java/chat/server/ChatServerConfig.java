@@ -0,0 +1,441 @@
+package chat.server;
+
+import chat.audit.OverflowPolicy;
+import chat.search.IndexBudget;
+
+/**
+ * Tunable server settings. Defaults can be overridden with {@code chat.*} system properties.
+ */
+public class ChatServerConfig {
+
+    private int port = 8080;
+    private int maxConnections = 100_000;
+    private int maxConnectionsPerAddress = 1_000;
+    private int acceptsPerSecond = 5_000;
+    private int readerIdleSeconds = 0;
+    private int writerIdleSeconds = 0;
+    private boolean idlePing = true;
+    private long maxConnectionMemory = 256L * 1024 * 1024;
+    private int idleRoomTtlSeconds = 600;
+    private long maxSpilledHistoryBytes = 64L * 1024 * 1024;
+    private long maxIndexBytes = IndexBudget.DEFAULT_MAX_BYTES;
+    private int maxChannelsPerUser = 1;
+    private boolean messageSequence;
+    private long presenceWindowMillis = 250;
+    private String tlsCertificateFile;
+    private String tlsKeyFile;
+    private String tlsKeyPassword;
+    private long tlsSessionCacheSize = 20_480;
+    private long tlsSessionTimeoutSeconds = 3_600;
+    private String tlsTicketKeyFile;
+    private String nodeId = "node";
+    private int webSocketPort = -1;
+    private boolean webSocketDeflate = true;
+    private int webSocketDeflateMaxRecipients = 16;
+    private String clusterNodes = "";
+    private int feedBufferSize = 256;
+    private String auditDirectory;
+    private int auditBufferSize = 65_536;
+    private OverflowPolicy auditOverflowPolicy = OverflowPolicy.BLOCK;
+    private long auditBlockMillis = 5;
+    private long auditMaxFileBytes = 64L * 1024 * 1024;
+    private boolean auditCompress;
+
+    public static ChatServerConfig fromSystemProperties() {
+        final var config = new ChatServerConfig();
+        config.setPort(Integer.getInteger("chat.port", config.getPort()));
+        config.setMaxConnections(Integer.getInteger("chat.maxConnections", config.getMaxConnections()));
+        config.setMaxConnectionsPerAddress(Integer.getInteger("chat.maxConnectionsPerAddress",
+                config.getMaxConnectionsPerAddress()));
+        config.setAcceptsPerSecond(Integer.getInteger("chat.acceptsPerSecond", config.getAcceptsPerSecond()));
+        config.setReaderIdleSeconds(Integer.getInteger("chat.readerIdleSeconds", config.getReaderIdleSeconds()));
+        config.setWriterIdleSeconds(Integer.getInteger("chat.writerIdleSeconds", config.getWriterIdleSeconds()));
+        config.setIdlePing(Boolean.parseBoolean(System.getProperty("chat.idlePing",
+                String.valueOf(config.isIdlePing()))));
+        config.setMaxConnectionMemory(Long.getLong("chat.maxConnectionMemory", config.getMaxConnectionMemory()));
+        config.setIdleRoomTtlSeconds(Integer.getInteger("chat.idleRoomTtlSeconds", config.getIdleRoomTtlSeconds()));
+        config.setMaxSpilledHistoryBytes(Long.getLong("chat.maxSpilledHistoryBytes",
+                config.getMaxSpilledHistoryBytes()));
+        config.setMaxIndexBytes(Long.getLong("chat.maxIndexBytes", config.getMaxIndexBytes()));
+        config.setMaxChannelsPerUser(Integer.getInteger("chat.maxChannelsPerUser", config.getMaxChannelsPerUser()));
+        config.setMessageSequence(Boolean.parseBoolean(System.getProperty("chat.messageSequence",
+                String.valueOf(config.isMessageSequence()))));
+        config.setPresenceWindowMillis(Long.getLong("chat.presenceWindowMillis", config.getPresenceWindowMillis()));
+        config.setTlsCertificateFile(System.getProperty("chat.tlsCertificateFile", config.getTlsCertificateFile()));
+        config.setTlsKeyFile(System.getProperty("chat.tlsKeyFile", config.getTlsKeyFile()));
+        config.setTlsKeyPassword(System.getProperty("chat.tlsKeyPassword", config.getTlsKeyPassword()));
+        config.setTlsSessionCacheSize(Long.getLong("chat.tlsSessionCacheSize", config.getTlsSessionCacheSize()));
+        config.setTlsSessionTimeoutSeconds(Long.getLong("chat.tlsSessionTimeoutSeconds",
+                config.getTlsSessionTimeoutSeconds()));
+        config.setTlsTicketKeyFile(System.getProperty("chat.tlsTicketKeyFile", config.getTlsTicketKeyFile()));
+        config.setWebSocketPort(Integer.getInteger("chat.webSocketPort", config.getWebSocketPort()));
+        config.setWebSocketDeflate(Boolean.parseBoolean(System.getProperty("chat.webSocketDeflate",
+                String.valueOf(config.isWebSocketDeflate()))));
+        config.setWebSocketDeflateMaxRecipients(Integer.getInteger("chat.webSocketDeflateMaxRecipients",
+                config.getWebSocketDeflateMaxRecipients()));
+        config.setNodeId(System.getProperty("chat.nodeId", config.getNodeId()));
+        config.setClusterNodes(System.getProperty("chat.clusterNodes", config.getClusterNodes()));
+        config.setFeedBufferSize(Integer.getInteger("chat.feedBufferSize", config.getFeedBufferSize()));
+        config.setAuditDirectory(System.getProperty("chat.auditDirectory", config.getAuditDirectory()));
+        config.setAuditBufferSize(Integer.getInteger("chat.auditBufferSize", config.getAuditBufferSize()));
+        config.setAuditOverflowPolicy(OverflowPolicy.valueOf(System.getProperty("chat.auditOverflowPolicy",
+                config.getAuditOverflowPolicy().name()).toUpperCase()));
+        config.setAuditBlockMillis(Long.getLong("chat.auditBlockMillis", config.getAuditBlockMillis()));
+        config.setAuditMaxFileBytes(Long.getLong("chat.auditMaxFileBytes", config.getAuditMaxFileBytes()));
+        config.setAuditCompress(Boolean.parseBoolean(System.getProperty("chat.auditCompress",
+                String.valueOf(config.isAuditCompress()))));
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(final int port) {
+        this.port = port;
+    }
+
+    /**
+     * Maximum number of simultaneously open client connections.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Maximum number of simultaneously open client connections from a single remote address.
+     */
+    public int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    public void setMaxConnectionsPerAddress(final int maxConnectionsPerAddress) {
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * Sustained rate of accepted connections, bursts of up to the same amount are allowed.
+     */
+    public int getAcceptsPerSecond() {
+        return acceptsPerSecond;
+    }
+
+    public void setAcceptsPerSecond(final int acceptsPerSecond) {
+        this.acceptsPerSecond = acceptsPerSecond;
+    }
+
+    /**
+     * Seconds without anything read from a connection before it is pinged or evicted, 0 to disable.
+     */
+    public int getReaderIdleSeconds() {
+        return readerIdleSeconds;
+    }
+
+    public void setReaderIdleSeconds(final int readerIdleSeconds) {
+        this.readerIdleSeconds = readerIdleSeconds;
+    }
+
+    /**
+     * Seconds without anything written to a connection before it is pinged, 0 to disable.
+     */
+    public int getWriterIdleSeconds() {
+        return writerIdleSeconds;
+    }
+
+    public void setWriterIdleSeconds(final int writerIdleSeconds) {
+        this.writerIdleSeconds = writerIdleSeconds;
+    }
+
+    /**
+     * Whether idle connections are sent {@code /ping} before being evicted.
+     */
+    public boolean isIdlePing() {
+        return idlePing;
+    }
+
+    public void setIdlePing(final boolean idlePing) {
+        this.idlePing = idlePing;
+    }
+
+    /**
+     * Maximum total of inbound and outbound bytes buffered by all connections.
+     */
+    public long getMaxConnectionMemory() {
+        return maxConnectionMemory;
+    }
+
+    public void setMaxConnectionMemory(final long maxConnectionMemory) {
+        this.maxConnectionMemory = maxConnectionMemory;
+    }
+
+    /**
+     * Seconds a room stays without users before it's evicted and its history spilled, 0 to keep rooms forever.
+     */
+    public int getIdleRoomTtlSeconds() {
+        return idleRoomTtlSeconds;
+    }
+
+    public void setIdleRoomTtlSeconds(final int idleRoomTtlSeconds) {
+        this.idleRoomTtlSeconds = idleRoomTtlSeconds;
+    }
+
+    /**
+     * Deflated history of evicted rooms kept in total, the history spilled longest ago is dropped over it.
+     */
+    public long getMaxSpilledHistoryBytes() {
+        return maxSpilledHistoryBytes;
+    }
+
+    public void setMaxSpilledHistoryBytes(final long maxSpilledHistoryBytes) {
+        this.maxSpilledHistoryBytes = maxSpilledHistoryBytes;
+    }
+
+    /**
+     * Search index memory of all rooms, the oldest messages of the largest indexes stop being searchable over it.
+     */
+    public long getMaxIndexBytes() {
+        return maxIndexBytes;
+    }
+
+    public void setMaxIndexBytes(final long maxIndexBytes) {
+        this.maxIndexBytes = maxIndexBytes;
+    }
+
+    /**
+     * Number of channels a user can be in at once. With more than one, lines sent to users start with
+     * the channel name.
+     */
+    public int getMaxChannelsPerUser() {
+        return maxChannelsPerUser;
+    }
+
+    public void setMaxChannelsPerUser(final int maxChannelsPerUser) {
+        this.maxChannelsPerUser = maxChannelsPerUser;
+    }
+
+    /**
+     * Whether messages sent to users start with their sequence number in the channel, which clients can
+     * pass back on login or join to only receive the messages they've missed.
+     */
+    public boolean isMessageSequence() {
+        return messageSequence;
+    }
+
+    public void setMessageSequence(final boolean messageSequence) {
+        this.messageSequence = messageSequence;
+    }
+
+    /**
+     * Milliseconds departures from a channel are collected before remaining users are told about them
+     * in one line, 0 to tell them about every departure right away.
+     */
+    public long getPresenceWindowMillis() {
+        return presenceWindowMillis;
+    }
+
+    public void setPresenceWindowMillis(final long presenceWindowMillis) {
+        this.presenceWindowMillis = presenceWindowMillis;
+    }
+
+    /**
+     * PEM file with the certificate chain of the server, null to accept plaintext connections.
+     */
+    public String getTlsCertificateFile() {
+        return tlsCertificateFile;
+    }
+
+    public void setTlsCertificateFile(final String tlsCertificateFile) {
+        this.tlsCertificateFile = tlsCertificateFile;
+    }
+
+    /**
+     * PEM file with the PKCS#8 private key of the certificate.
+     */
+    public String getTlsKeyFile() {
+        return tlsKeyFile;
+    }
+
+    public void setTlsKeyFile(final String tlsKeyFile) {
+        this.tlsKeyFile = tlsKeyFile;
+    }
+
+    /**
+     * Password of the private key, null if it's not encrypted.
+     */
+    public String getTlsKeyPassword() {
+        return tlsKeyPassword;
+    }
+
+    public void setTlsKeyPassword(final String tlsKeyPassword) {
+        this.tlsKeyPassword = tlsKeyPassword;
+    }
+
+    /**
+     * Maximum number of TLS sessions cached for resumption.
+     */
+    public long getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public void setTlsSessionCacheSize(final long tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+
+    /**
+     * Seconds a cached TLS session can be resumed for.
+     */
+    public long getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    public void setTlsSessionTimeoutSeconds(final long tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * File with session ticket keys shared by cluster nodes, 48 bytes each, the first one issuing tickets.
+     * Requires the OpenSSL provider, null to let every node generate its own keys.
+     */
+    public String getTlsTicketKeyFile() {
+        return tlsTicketKeyFile;
+    }
+
+    public void setTlsTicketKeyFile(final String tlsTicketKeyFile) {
+        this.tlsTicketKeyFile = tlsTicketKeyFile;
+    }
+
+    /**
+     * Port of the WebSocket listener, negative to disable it.
+     */
+    public int getWebSocketPort() {
+        return webSocketPort;
+    }
+
+    public void setWebSocketPort(final int webSocketPort) {
+        this.webSocketPort = webSocketPort;
+    }
+
+    /**
+     * Whether WebSocket clients may negotiate permessage-deflate.
+     */
+    public boolean isWebSocketDeflate() {
+        return webSocketDeflate;
+    }
+
+    public void setWebSocketDeflate(final boolean webSocketDeflate) {
+        this.webSocketDeflate = webSocketDeflate;
+    }
+
+    /**
+     * Largest number of recipients of a broadcast that is compressed for each of them. Broadcasts to more
+     * recipients are framed once and sent uncompressed to all of them.
+     */
+    public int getWebSocketDeflateMaxRecipients() {
+        return webSocketDeflateMaxRecipients;
+    }
+
+    public void setWebSocketDeflateMaxRecipients(final int webSocketDeflateMaxRecipients) {
+        this.webSocketDeflateMaxRecipients = webSocketDeflateMaxRecipients;
+    }
+
+    /**
+     * Id of this node in the cluster, must be listed in {@link #getClusterNodes() cluster nodes}.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(final String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Relay addresses of all cluster nodes including this one, as {@code id=host:port} separated by commas.
+     * Empty to run a standalone server.
+     */
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+
+    public void setClusterNodes(final String clusterNodes) {
+        this.clusterNodes = clusterNodes;
+    }
+
+    /**
+     * Room events buffered for every subscriber of the room feed, events that don't fit are dropped.
+     */
+    public int getFeedBufferSize() {
+        return feedBufferSize;
+    }
+
+    public void setFeedBufferSize(final int feedBufferSize) {
+        this.feedBufferSize = feedBufferSize;
+    }
+
+    /**
+     * Directory audit log files are written to, null to disable the audit log.
+     */
+    public String getAuditDirectory() {
+        return auditDirectory;
+    }
+
+    public void setAuditDirectory(final String auditDirectory) {
+        this.auditDirectory = auditDirectory;
+    }
+
+    /**
+     * Number of audit events buffered for the writer, rounded up to a power of two.
+     */
+    public int getAuditBufferSize() {
+        return auditBufferSize;
+    }
+
+    public void setAuditBufferSize(final int auditBufferSize) {
+        this.auditBufferSize = auditBufferSize;
+    }
+
+    /**
+     * What recording an audit event does when the buffer is full.
+     */
+    public OverflowPolicy getAuditOverflowPolicy() {
+        return auditOverflowPolicy;
+    }
+
+    public void setAuditOverflowPolicy(final OverflowPolicy auditOverflowPolicy) {
+        this.auditOverflowPolicy = auditOverflowPolicy;
+    }
+
+    /**
+     * How long {@link OverflowPolicy#BLOCK} waits for a free slot before the event is dropped.
+     */
+    public long getAuditBlockMillis() {
+        return auditBlockMillis;
+    }
+
+    public void setAuditBlockMillis(final long auditBlockMillis) {
+        this.auditBlockMillis = auditBlockMillis;
+    }
+
+    /**
+     * Uncompressed size after which the audit file is rotated.
+     */
+    public long getAuditMaxFileBytes() {
+        return auditMaxFileBytes;
+    }
+
+    public void setAuditMaxFileBytes(final long auditMaxFileBytes) {
+        this.auditMaxFileBytes = auditMaxFileBytes;
+    }
+
+    public boolean isAuditCompress() {
+        return auditCompress;
+    }
+
+    public void setAuditCompress(final boolean auditCompress) {
+        this.auditCompress = auditCompress;
+    }
+}
@@ -1,23 +1,141 @@
 package chat.server;
 
+import chat.audit.AsyncAuditLog;
+import chat.audit.AuditLog;
+import chat.data.AsyncStorage;
 import chat.data.LocalStorage;
 import chat.handler.ChatHandler;
+import chat.jfr.RecordingAsyncStorage;
+import chat.model.BroadcastEncoder;
+import chat.model.ChatChannelListener;
+import chat.search.IndexBudget;
 import chat.service.ChatService;
+import chat.service.PresenceNotifier;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 public class ChatServerInitializer extends ChannelInitializer<Channel> {
+
+    private final ChatServerConfig config;
+    private final Timer timer;
+    private final AsyncStorage storage;
+    private final AsyncAuditLog auditLog;
+    private final ChatService chatService;
+    private final ConnectionMemoryTracker memoryTracker;
+    private final IdleConnectionHandler idleConnectionHandler;
+    private final SslContext sslContext;
+
+    public ChatServerInitializer() {
+        this(new ChatServerConfig());
+    }
+
+    public ChatServerInitializer(final ChatServerConfig config) {
+        this(config, ChatChannelListener.NONE);
+    }
+
+    /**
+     * @param channelListener listener of every chat channel created by the server, such as its cluster node
+     */
+    public ChatServerInitializer(final ChatServerConfig config, final ChatChannelListener channelListener) {
+        this.config = config;
+        final var idleRoomTtlMillis = TimeUnit.SECONDS.toMillis(config.getIdleRoomTtlSeconds());
+        final var presenceWindowMillis = config.getPresenceWindowMillis();
+        this.timer = idleRoomTtlMillis > 0 || presenceWindowMillis > 0
+                ? new HashedWheelTimer(new DefaultThreadFactory("chat-timer", true), 10, TimeUnit.MILLISECONDS)
+                : null;
+        this.storage = new RecordingAsyncStorage(AsyncStorage.completed(new LocalStorage(idleRoomTtlMillis,
+                idleRoomTtlMillis > 0 ? timer : null, config.getMaxSpilledHistoryBytes())));
+        this.auditLog = createAuditLog(config);
+        this.chatService = new ChatService(channelListener, auditLog != null ? auditLog : AuditLog.NONE,
+                Math.max(1, config.getMaxChannelsPerUser()), config.isMessageSequence(),
+                new PresenceNotifier(presenceWindowMillis, presenceWindowMillis > 0 ? timer : null),
+                new IndexBudget(config.getMaxIndexBytes()));
+        this.memoryTracker = new ConnectionMemoryTracker(config.getMaxConnectionMemory());
+        this.idleConnectionHandler = new IdleConnectionHandler(config.isIdlePing());
+        this.sslContext = ServerSslContextFactory.create(config);
+    }
+
     @Override
     protected void initChannel(final Channel ch) {
+        ch.attr(BroadcastEncoder.KEY).set(LineBroadcastEncoder.INSTANCE);
         final var pipeline = ch.pipeline();
-        pipeline.addLast("framer", new DelimiterBasedFrameDecoder(8192, Delimiters.lineDelimiter()));
-        pipeline.addLast("decoder", new StringDecoder());
-        pipeline.addLast("encoder", new StringEncoder());
-        pipeline.addLast("handler", new ChatHandler(new ChatService(), new LocalStorage()));
+        if (sslContext != null) {
+            pipeline.addLast("tls", sslContext.newHandler(ch.alloc()));
+        }
+        pipeline.addLast("memory", new OutboundAccountingHandler(memoryTracker));
+        if (config.getReaderIdleSeconds() > 0 || config.getWriterIdleSeconds() > 0) {
+            pipeline.addLast("idleState", new IdleStateHandler(config.getReaderIdleSeconds(),
+                    config.getWriterIdleSeconds(), 0, TimeUnit.SECONDS));
+        }
+        pipeline.addLast("framer", new AccountingFrameDecoder(8192, memoryTracker));
+        pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
+        pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
+        pipeline.addLast("idle", idleConnectionHandler);
+        pipeline.addLast("handler", new ChatHandler(chatService, storage));
+
+    }
+
+    /**
+     * Storage shared by all connections of the server, whatever their transport.
+     */
+    public AsyncStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * TLS context of the server, null if it accepts plaintext connections.
+     */
+    public SslContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * @return audit log of the server, or null if it's disabled
+     */
+    public AsyncAuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public ChatService getChatService() {
+        return chatService;
+    }
+
+    public ConnectionMemoryTracker getMemoryTracker() {
+        return memoryTracker;
+    }
+
+    public IdleConnectionHandler getIdleConnectionHandler() {
+        return idleConnectionHandler;
+    }
+
+    /**
+     * Stops the timer of room evictions and presence windows, pending ones are dropped.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
 
+    private static AsyncAuditLog createAuditLog(final ChatServerConfig config) {
+        if (config.getAuditDirectory() == null) {
+            return null;
+        }
+        final var auditLog = new AsyncAuditLog(Path.of(config.getAuditDirectory()), config.getAuditMaxFileBytes(),
+                config.isAuditCompress(), config.getAuditBufferSize(), config.getAuditOverflowPolicy(),
+                config.getAuditBlockMillis());
+        auditLog.start();
+        return auditLog;
     }
-}
\ No newline at end of file
+}
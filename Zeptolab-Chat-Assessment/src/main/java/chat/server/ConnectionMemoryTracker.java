@@ -0,0 +1,124 @@
+package chat.server;
+
+import io.netty.channel.Channel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps totals of bytes buffered by all connections, reported by their {@link AccountingFrameDecoder}
+ * and {@link OutboundAccountingHandler}. When growth of a connection pushes the total over the limit,
+ * the connection buffering the most is closed, which isn't necessarily the one that has grown.
+ */
+public class ConnectionMemoryTracker {
+
+    private final long maxBytes;
+    private final AtomicLong inboundBytes = new AtomicLong();
+    private final AtomicLong outboundBytes = new AtomicLong();
+    private final LongAdder evictedConnections = new LongAdder();
+    /**
+     * Bytes buffered by every connection that has buffered any, until it's closed.
+     */
+    private final Map<Channel, ConnectionBytes> connections = new ConcurrentHashMap<>();
+
+    public ConnectionMemoryTracker(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void addInbound(final Channel channel, final long delta) {
+        if (delta != 0) {
+            final var bytes = bytesOf(channel, delta);
+            if (bytes != null) {
+                bytes.inbound.addAndGet(delta);
+            }
+            checkLimit(delta, inboundBytes.addAndGet(delta) + outboundBytes.get());
+        }
+    }
+
+    public void addOutbound(final Channel channel, final long delta) {
+        if (delta != 0) {
+            final var bytes = bytesOf(channel, delta);
+            if (bytes != null) {
+                bytes.outbound.addAndGet(delta);
+            }
+            checkLimit(delta, outboundBytes.addAndGet(delta) + inboundBytes.get());
+        }
+    }
+
+    /**
+     * Bytes received but not yet framed into messages.
+     */
+    public long getInboundBytes() {
+        return inboundBytes.get();
+    }
+
+    /**
+     * Bytes written but not yet flushed to sockets.
+     */
+    public long getOutboundBytes() {
+        return outboundBytes.get();
+    }
+
+    public long getTotalBytes() {
+        return inboundBytes.get() + outboundBytes.get();
+    }
+
+    public long getEvictedConnections() {
+        return evictedConnections.sum();
+    }
+
+    /**
+     * @return bytes of the connection, registered on its first growth while it's open, or null
+     */
+    private ConnectionBytes bytesOf(final Channel channel, final long delta) {
+        final var bytes = connections.get(channel);
+        if (bytes != null || delta < 0 || !channel.isOpen()) {
+            return bytes;
+        }
+        final var registered = connections.computeIfAbsent(channel, c -> new ConnectionBytes());
+        channel.closeFuture().addListener(future -> connections.remove(channel));
+        return registered;
+    }
+
+    private void checkLimit(final long delta, final long total) {
+        if (delta > 0 && total > maxBytes) {
+            evictLargest();
+        }
+    }
+
+    /**
+     * Closes the connection buffering the most, unless one is being closed for the limit already.
+     */
+    private synchronized void evictLargest() {
+        Channel largest = null;
+        ConnectionBytes largestBytes = null;
+        for (final Map.Entry<Channel, ConnectionBytes> connection : connections.entrySet()) {
+            final var bytes = connection.getValue();
+            if (bytes.evicted) {
+                return;
+            }
+            if (largestBytes == null || bytes.total() > largestBytes.total()) {
+                largest = connection.getKey();
+                largestBytes = bytes;
+            }
+        }
+        if (largest != null) {
+            largestBytes.evicted = true;
+            evictedConnections.increment();
+            largest.close();
+        }
+    }
+
+    private static final class ConnectionBytes {
+
+        private final AtomicLong inbound = new AtomicLong();
+        private final AtomicLong outbound = new AtomicLong();
+        private volatile boolean evicted;
+
+        private long total() {
+            return inbound.get() + outbound.get();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package chat.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static chat.data.LocalStorage.LINE_SEPARATOR;
+
+/**
+ * Reacts to {@link IdleStateEvent}s of connections. A connection that has been silent for a reader idle
+ * period is sent {@code /ping} if pings are enabled, and evicted if it is still silent after another period.
+ * Writer idle connections are pinged to keep them alive. Clients may answer pings with {@code /pong},
+ * which is consumed here.
+ */
+@ChannelHandler.Sharable
+public class IdleConnectionHandler extends ChannelDuplexHandler {
+
+    public static final String PING = "/ping";
+    public static final String PONG = "/pong";
+    private static final AttributeKey<Boolean> PINGED_KEY = AttributeKey.valueOf("pinged");
+
+    private final boolean ping;
+    private final LongAdder evictedConnections = new LongAdder();
+
+    public IdleConnectionHandler(final boolean ping) {
+        this.ping = ping;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        final var pinged = ctx.channel().attr(PINGED_KEY);
+        if (pinged.get() != null) {
+            pinged.set(null);
+        }
+        if (msg instanceof String line && PONG.equals(line.trim())) {
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent event)) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+        if (event.state() == IdleState.READER_IDLE) {
+            final var pinged = ctx.channel().attr(PINGED_KEY);
+            if (ping && pinged.get() == null) {
+                pinged.set(Boolean.TRUE);
+                ctx.writeAndFlush(PING + LINE_SEPARATOR);
+            } else {
+                evictedConnections.increment();
+                ctx.close();
+            }
+        } else if (event.state() == IdleState.WRITER_IDLE && ping) {
+            ctx.writeAndFlush(PING + LINE_SEPARATOR);
+        }
+    }
+
+    public long getEvictedConnections() {
+        return evictedConnections.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package chat.server;
+
+import chat.model.BroadcastEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Encodes broadcasts to the line protocol once, recipients' string encoders pass the shared bytes through.
+ */
+public class LineBroadcastEncoder implements BroadcastEncoder {
+
+    public static final LineBroadcastEncoder INSTANCE = new LineBroadcastEncoder();
+
+    @Override
+    public ByteBuf encode(final String text, final int recipients) {
+        return ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, text);
+    }
+}
@@ -0,0 +1,79 @@
+package chat.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports bytes pending in the channel outbound buffer to {@link ConnectionMemoryTracker}.
+ * It's sampled after every write and flush, and whenever writability changes. Bytes left pending by a flush
+ * are drained by the transport without notifying handlers, so while any are pending the buffer is also
+ * sampled periodically, and the total follows a slow reader catching up.
+ */
+public class OutboundAccountingHandler extends ChannelDuplexHandler {
+
+    private static final long RESAMPLE_MILLIS = 100;
+
+    private final ConnectionMemoryTracker tracker;
+    private long pendingBytes;
+    private ScheduledFuture<?> resample;
+
+    public OutboundAccountingHandler(final ConnectionMemoryTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+        ctx.write(msg, promise);
+        account(ctx);
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx) {
+        ctx.flush();
+        account(ctx);
+        if (pendingBytes > 0 && resample == null) {
+            scheduleResample(ctx);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+        account(ctx);
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) {
+        if (resample != null) {
+            resample.cancel(false);
+            resample = null;
+        }
+        tracker.addOutbound(ctx.channel(), -pendingBytes);
+        pendingBytes = 0;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    private void scheduleResample(final ChannelHandlerContext ctx) {
+        resample = ctx.executor().schedule(() -> {
+            resample = null;
+            account(ctx);
+            if (pendingBytes > 0 && ctx.channel().isActive()) {
+                scheduleResample(ctx);
+            }
+        }, RESAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void account(final ChannelHandlerContext ctx) {
+        final var outboundBuffer = ctx.channel().unsafe().outboundBuffer();
+        final var pending = outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+        tracker.addOutbound(ctx.channel(), pending - pendingBytes);
+        pendingBytes = pending;
+    }
+}
@@ -0,0 +1,80 @@
+package chat.server;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Builds the TLS context of the server from PEM key material on disk. The OpenSSL provider is used when
+ * netty-tcnative is on the class path, the JDK provider otherwise. Both resume sessions from the server
+ * session cache and from session tickets, so reconnecting clients skip the full handshake.
+ */
+public class ServerSslContextFactory {
+
+    /**
+     * Size of one session ticket key: 16 bytes of name, 16 bytes of HMAC key and 16 bytes of AES key.
+     */
+    private static final int TICKET_KEY_LENGTH = 48;
+
+    private ServerSslContextFactory() {
+    }
+
+    /**
+     * @return TLS context, or null if the config has no certificate, so the server runs in plaintext
+     * @throws IllegalStateException if the key material can't be loaded
+     */
+    public static SslContext create(final ChatServerConfig config) {
+        if (config.getTlsCertificateFile() == null) {
+            return null;
+        }
+        final var provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        try {
+            final var context = SslContextBuilder
+                    .forServer(new File(config.getTlsCertificateFile()), new File(config.getTlsKeyFile()),
+                            config.getTlsKeyPassword())
+                    .sslProvider(provider)
+                    .sessionCacheSize(config.getTlsSessionCacheSize())
+                    .sessionTimeout(config.getTlsSessionTimeoutSeconds())
+                    .build();
+            if (config.getTlsTicketKeyFile() != null) {
+                if (provider != SslProvider.OPENSSL) {
+                    throw new IllegalStateException("Session ticket keys require the OpenSSL provider, "
+                            + "the JDK provider generates its own");
+                }
+                setTicketKeys(context, Path.of(config.getTlsTicketKeyFile()));
+            }
+            return context;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load TLS key material", e);
+        }
+    }
+
+    /**
+     * Installs ticket keys shared by all nodes, so a ticket issued by one node is accepted by the others.
+     * The first key encrypts new tickets, the rest only decrypt tickets issued before a rotation.
+     */
+    private static void setTicketKeys(final SslContext context, final Path file) throws IOException {
+        final var bytes = Files.readAllBytes(file);
+        if (bytes.length == 0 || bytes.length % TICKET_KEY_LENGTH != 0) {
+            throw new IllegalStateException("Ticket key file " + file + " must hold multiples of "
+                    + TICKET_KEY_LENGTH + " bytes");
+        }
+        final var keys = new OpenSslSessionTicketKey[bytes.length / TICKET_KEY_LENGTH];
+        for (int i = 0; i < keys.length; i++) {
+            final var offset = i * TICKET_KEY_LENGTH;
+            keys[i] = new OpenSslSessionTicketKey(Arrays.copyOfRange(bytes, offset, offset + 16),
+                    Arrays.copyOfRange(bytes, offset + 16, offset + 32),
+                    Arrays.copyOfRange(bytes, offset + 32, offset + 48));
+        }
+        ((OpenSslSessionContext) context.sessionContext()).setTicketKeys(keys);
+    }
+}
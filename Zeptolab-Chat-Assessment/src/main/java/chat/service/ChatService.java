@@ -1,170 +1,566 @@
 package chat.service;
 
-import chat.data.Storage;
+import chat.audit.AuditLog;
+import chat.data.AsyncStorage;
+import chat.jfr.HistoryReplayEvent;
 import chat.model.ChatChannel;
+import chat.model.ChatChannelListener;
 import chat.model.User;
+import chat.search.IndexBudget;
 import io.netty.channel.ChannelHandlerContext;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
 import static chat.data.LocalStorage.LINE_SEPARATOR;
 import static chat.data.LocalStorage.USER_KEY;
 
 public class ChatService {
 
+    public static final int CHANNEL_LIST_PAGE_SIZE = 50;
+    public static final int SEARCH_RESULT_LIMIT = 20;
+
+    /**
+     * Sequence number passed to {@link ChatService#joinChannel} to replay the whole kept history.
+     */
+    public static final long FULL_HISTORY = -1;
+
+    private final ChatChannelListener channelListener;
+    private final AuditLog auditLog;
+    private final int maxChannelsPerUser;
+    private final boolean numberLines;
+    private final PresenceNotifier presenceNotifier;
+    private final IndexBudget indexBudget;
+
+    public ChatService() {
+        this(ChatChannelListener.NONE);
+    }
+
+    /**
+     * @param channelListener listener of channels created by the service
+     */
+    public ChatService(final ChatChannelListener channelListener) {
+        this(channelListener, AuditLog.NONE);
+    }
+
+    /**
+     * @param channelListener listener of channels created by the service
+     * @param auditLog        audit log of logins, joins, leaves and messages
+     */
+    public ChatService(final ChatChannelListener channelListener, final AuditLog auditLog) {
+        this(channelListener, auditLog, 1);
+    }
+
+    /**
+     * @param channelListener    listener of channels created by the service
+     * @param auditLog           audit log of logins, joins, leaves and messages
+     * @param maxChannelsPerUser number of channels a user can be in at once. With 1, joining a channel leaves
+     *                           the previous one. With more, joining adds a channel and lines sent to users
+     *                           start with the channel name.
+     */
+    public ChatService(final ChatChannelListener channelListener, final AuditLog auditLog,
+                       final int maxChannelsPerUser) {
+        this(channelListener, auditLog, maxChannelsPerUser, false);
+    }
+
+    /**
+     * @param channelListener    listener of channels created by the service
+     * @param auditLog           audit log of logins, joins, leaves and messages
+     * @param maxChannelsPerUser number of channels a user can be in at once
+     * @param numberLines        whether messages sent to users start with their sequence number in the channel
+     */
+    public ChatService(final ChatChannelListener channelListener, final AuditLog auditLog,
+                       final int maxChannelsPerUser, final boolean numberLines) {
+        this(channelListener, auditLog, maxChannelsPerUser, numberLines, PresenceNotifier.IMMEDIATE);
+    }
+
+    /**
+     * @param channelListener    listener of channels created by the service
+     * @param auditLog           audit log of logins, joins, leaves and messages
+     * @param maxChannelsPerUser number of channels a user can be in at once
+     * @param numberLines        whether messages sent to users start with their sequence number in the channel
+     * @param presenceNotifier   tells remaining users of a channel who has left it
+     */
+    public ChatService(final ChatChannelListener channelListener, final AuditLog auditLog,
+                       final int maxChannelsPerUser, final boolean numberLines,
+                       final PresenceNotifier presenceNotifier) {
+        this(channelListener, auditLog, maxChannelsPerUser, numberLines, presenceNotifier,
+                new IndexBudget(IndexBudget.DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * @param channelListener    listener of channels created by the service
+     * @param auditLog           audit log of logins, joins, leaves and messages
+     * @param maxChannelsPerUser number of channels a user can be in at once
+     * @param numberLines        whether messages sent to users start with their sequence number in the channel
+     * @param presenceNotifier   tells remaining users of a channel who has left it
+     * @param indexBudget        search index memory shared by channels created by the service
+     */
+    public ChatService(final ChatChannelListener channelListener, final AuditLog auditLog,
+                       final int maxChannelsPerUser, final boolean numberLines,
+                       final PresenceNotifier presenceNotifier, final IndexBudget indexBudget) {
+        this.channelListener = channelListener;
+        this.auditLog = auditLog;
+        this.maxChannelsPerUser = maxChannelsPerUser;
+        this.numberLines = numberLines;
+        this.presenceNotifier = presenceNotifier;
+        this.indexBudget = indexBudget;
+    }
+
     /**
      * Logs in user into the application itself. If user does not exist, they're created.
-     * If user exists, they're logged in if password is correct. If user was connected to the channel prior
-     * to disconnecting, they're connected to that channel if it's not full.
+     * If user exists, they're logged in if password is correct. If user was connected to channels prior
+     * to disconnecting, they're connected to those channels that are not full.
+     * Login and password may be followed by sequence numbers of the last messages the client has seen,
+     * either {@code <sequence>} for the current channel or {@code <channel>=<sequence>}, so that only messages
+     * after them are replayed.
      *
-     * @param argument login and password information of user
+     * @param argument login and password information of user, optionally followed by seen sequence numbers
      */
-    public void handleLogin(final ChannelHandlerContext ctx, final Storage storage, final String argument) {
+    public void handleLogin(final ChannelHandlerContext ctx, final AsyncStorage storage, final String argument) {
         if (argument == null) {
-            ctx.writeAndFlush(String.format("ERROR: Missing arguments.%s", LINE_SEPARATOR));
+            ctx.writeAndFlush(Responses.MISSING_ARGUMENTS.buffer());
             return;
         }
 
         final var loginParts = argument.split("\\s+");
-        if (loginParts.length != 2) {
-            ctx.writeAndFlush(String.format("ERROR: Invalid arguments.%s", LINE_SEPARATOR));
+        final var seen = loginParts.length < 2 ? null : seenSequences(loginParts);
+        if (seen == null) {
+            ctx.writeAndFlush(Responses.INVALID_ARGUMENTS.buffer());
             return;
         }
 
         final var userName = loginParts[0];
         final var password = loginParts[1];
 
-        final var user = storage.getUserByName(userName);
-        if (user != null) {
-            if (user.getPassword().equals(password)) {
-                var channel = ctx.channel();
-                storage.logoutUser(ctx, channel.attr(USER_KEY).get());
-                channel.attr(USER_KEY).set(user);
-                storage.loginUser(channel, user);
-                ctx.writeAndFlush(String.format("You've logged in as %s.%s", userName, LINE_SEPARATOR));
-                joinChannel(ctx, storage, user, storage.getCurrentChatChannel(user));
+        onEventLoop(ctx, storage.getUserByName(userName), user -> {
+            if (user != null) {
+                if (user.getPassword().equals(password)) {
+                    final var channel = ctx.channel();
+                    final var loggedIn = storage.logoutUser(ctx, channel.attr(USER_KEY).get())
+                            .thenCompose(v -> {
+                                channel.attr(USER_KEY).set(user);
+                                return storage.loginUser(channel, user);
+                            })
+                            .thenCompose(v -> previousChannels(storage, user));
+                    onEventLoop(ctx, loggedIn, previous -> {
+                        auditLog.login(userName);
+                        ctx.writeAndFlush(Responses.LOGGED_IN.format(ctx.alloc(), userName));
+                        // the current channel is joined last, so that it stays current
+                        for (int i = previous.size() - 1; i >= 0; i--) {
+                            final var cc = previous.get(i);
+                            final var current = i == 0 ? seen.getOrDefault("", FULL_HISTORY) : FULL_HISTORY;
+                            joinChannel(ctx, storage, user, cc, seen.getOrDefault(cc.getName(), current));
+                        }
+                    });
+                } else {
+                    ctx.writeAndFlush(Responses.WRONG_PASSWORD.buffer());
+                }
             } else {
-                ctx.writeAndFlush(String.format("ERROR: Wrong password.%s", LINE_SEPARATOR));
+                onEventLoop(ctx, storage.createUser(ctx, userName, password), created -> {
+                    auditLog.login(userName);
+                    ctx.writeAndFlush(Responses.WELCOME.format(ctx.alloc(), userName));
+                });
             }
-        } else {
-            storage.createUser(ctx, userName, password);
-            ctx.writeAndFlush(String.format("Welcome %s.%s", userName, LINE_SEPARATOR));
-        }
+        });
     }
 
     /**
-     * If channel doesn't exist, it is created and {@link ChatService#joinChannel} is called
+     * If channel doesn't exist, it is created and {@link ChatService#joinChannel} is called.
+     * Channel name may be followed by the sequence number of the last message of the channel the client
+     * has seen, so that only messages after it are replayed.
      *
-     * @param argument channel name that user wants to join
+     * @param argument channel name that user wants to join, optionally followed by seen sequence number
      */
-    public void handleJoin(final ChannelHandlerContext ctx, final Storage storage, final User user, final String argument) {
-        synchronized (this) {
-            if (argument == null) {
-                ctx.writeAndFlush(String.format("ERROR: Please input channel name.%s", LINE_SEPARATOR));
-                return;
+    public void handleJoin(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user, final String argument) {
+        if (loginRequired(ctx, user)) {
+            return;
+        }
+        if (argument == null) {
+            ctx.writeAndFlush(Responses.MISSING_CHANNEL_NAME.buffer());
+            return;
+        }
+        // parsed without a regular expression, as joins are frequent and mostly name the channel only
+        var nameEnd = 0;
+        while (nameEnd < argument.length() && !Character.isWhitespace(argument.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        final var seen = nameEnd == argument.length() ? FULL_HISTORY : sequence(argument.substring(nameEnd).trim());
+        if (seen < FULL_HISTORY) {
+            ctx.writeAndFlush(Responses.INVALID_ARGUMENTS.buffer());
+            return;
+        }
+        final var name = nameEnd == argument.length() ? argument : argument.substring(0, nameEnd);
+        joinChannel(ctx, storage, user, name, seen);
+    }
+
+    /**
+     * Joins user to the channel of the given name, creating it if there is none.
+     */
+    private void joinChannel(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user,
+                             final String name, final long seen) {
+        // The room is registered before joining, so that history of an evicted room is restored for the replay.
+        // The storage evicts the room after its TTL if the join fails and it stays empty.
+        final var created = new ChatChannel[1];
+        final var channel = storage.getOrAddChatChannel(name, n -> created[0] =
+                new ChatChannel(n, 10, channelListener, maxChannelsPerUser > 1, numberLines, indexBudget));
+        onEventLoop(ctx, channel, cc -> {
+            if (cc == created[0]) {
+                ctx.writeAndFlush(Responses.CHANNEL_CREATED.format(ctx.alloc(), name));
             }
-            final var channel = storage.getChatChannels()
-                    .stream()
-                    .filter(ch -> ch.getName().equals(argument))
-                    .findFirst().orElseGet(() -> {
-                        ctx.writeAndFlush(String.format("New channel %s has been created.%s", argument, LINE_SEPARATOR));
-                        return new ChatChannel(argument, 10);
-                    });
-            joinChannel(ctx, storage, user, channel);
+            joinChannel(ctx, storage, user, cc, seen);
+        });
+    }
+
+    /**
+     * Removes user from the current chat channel
+     */
+    public void handleLeave(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user) {
+        handleLeave(ctx, storage, user, null);
+    }
+
+    /**
+     * Removes user from the chat channel. A user in several channels may name the channel to leave,
+     * otherwise they leave the current one and the channel they've joined before it becomes current.
+     *
+     * @param argument name of the channel to leave, or null
+     */
+    public void handleLeave(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user,
+                            final String argument) {
+        if (loginRequired(ctx, user)) {
+            return;
         }
+        if (maxChannelsPerUser == 1) {
+            final var left = storage.getCurrentChatChannel(user)
+                    .thenCompose(cc -> storage.removeUserFromChannels(user)
+                            .thenCompose(v -> storage.removeChannelFromUser(user))
+                            .thenApply(v -> cc));
+            onEventLoop(ctx, left, cc -> leftChannel(ctx, user, cc, null));
+            return;
+        }
+        final var left = storage.getUserChatChannels(user).thenCompose(joined -> {
+            final var cc = argument == null ? (joined.isEmpty() ? null : joined.get(0)) : find(joined, argument);
+            return cc == null
+                    ? CompletableFuture.<ChatChannel>completedFuture(null)
+                    : storage.removeUserFromChannel(user, cc).thenApply(v -> cc);
+        });
+        onEventLoop(ctx, left, cc -> leftChannel(ctx, user, cc, argument));
     }
 
     /**
-     * Removes user from the chat channel
+     * Makes a channel the user has joined their current channel, which their messages are sent to.
+     *
+     * @param argument channel name
      */
-    public void handleLeave(final ChannelHandlerContext ctx, final Storage storage, final User user) {
+    public void handleTarget(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user,
+                             final String argument) {
         if (loginRequired(ctx, user)) {
             return;
         }
-        final var cc = storage.getCurrentChatChannel(user);
-        storage.removeUserFromChannels(user);
-        storage.removeChannelFromUser(user);
-        final var message = String.format("User %s has left the channel.%s", user, LINE_SEPARATOR);
-        cc.getUsers().stream().flatMap(u -> u.getChannels().stream()).forEach(ch -> ch.writeAndFlush(message));
+        if (argument == null) {
+            ctx.writeAndFlush(Responses.MISSING_CHANNEL_NAME.buffer());
+            return;
+        }
+        onEventLoop(ctx, storage.getUserChatChannels(user), joined -> {
+            final var channel = find(joined, argument);
+            if (channel == null || !channel.containsUser(user)) {
+                ctx.writeAndFlush(Responses.NOT_JOINED_CHANNEL.format(ctx.alloc(), argument));
+                return;
+            }
+            onEventLoop(ctx, storage.addChatChannelToUser(user, channel),
+                    v -> ctx.writeAndFlush(Responses.TARGET_SET.format(ctx.alloc(), channel.getName())));
+        });
     }
 
     /**
      * Logs out user from the application.
      */
-    public void logout(final ChannelHandlerContext ctx, final Storage storage, final User user) {
-        final var cc = storage.getCurrentChatChannel(user);
+    public void logout(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user) {
         if (user != null) {
-            storage.logoutUser(ctx, user);
-        }
-        final var chatUsers = cc.getUsers();
-        if (!chatUsers.contains(user)) {
-            final var message = String.format("User %s has left the channel.%s", user, LINE_SEPARATOR);
-            chatUsers.stream().flatMap(u -> u.getChannels().stream()).forEach(ch -> ch.writeAndFlush(message));
+            final var loggedOut = storage.getUserChatChannels(user)
+                    .thenCompose(joined -> storage.logoutUser(ctx, user).thenApply(v -> joined));
+            onEventLoop(ctx, loggedOut, joined -> {
+                for (final ChatChannel cc : joined) {
+                    if (!cc.containsUser(user)) {
+                        leftChannel(ctx, user, cc, null);
+                    }
+                }
+            });
         }
         ctx.close();
     }
 
     /**
-     * Lists all available chat channels to user
+     * Logs out user of the closed connection, if any.
+     */
+    public void logout(final ChannelHandlerContext ctx, final AsyncStorage storage) {
+        onEventLoop(ctx, storage.getUserByChannel(ctx.channel()), user -> logout(ctx, storage, user));
+    }
+
+    /**
+     * Lists available chat channels to user. Without arguments all channels are listed,
+     * otherwise a page of {@link ChatService#CHANNEL_LIST_PAGE_SIZE} channels is listed,
+     * optionally limited to channels whose name starts with the given prefix.
+     *
+     * @param argument page number starting from 1, optionally followed by channel name prefix
      */
-    public void listChannels(final ChannelHandlerContext ctx, final Storage storage) {
-        final var channels = storage.getChatChannels();
-        for (ChatChannel channel : channels) {
-            ctx.channel().writeAndFlush(String.format(channel + "%s", LINE_SEPARATOR));
+    public void listChannels(final ChannelHandlerContext ctx, final AsyncStorage storage, final String argument) {
+        if (argument == null) {
+            onEventLoop(ctx, storage.getChatChannelList(), ctx.channel()::writeAndFlush);
+            return;
+        }
+        final var listParts = argument.split("\\s+");
+        final int page;
+        try {
+            page = Integer.parseInt(listParts[0]);
+        } catch (NumberFormatException e) {
+            ctx.writeAndFlush(Responses.INVALID_ARGUMENTS.buffer());
+            return;
+        }
+        if (page < 1 || listParts.length > 2) {
+            ctx.writeAndFlush(Responses.INVALID_ARGUMENTS.buffer());
+            return;
         }
+        final var prefix = listParts.length > 1 ? listParts[1] : "";
+        final var offset = (int) Math.min((long) (page - 1) * CHANNEL_LIST_PAGE_SIZE, Integer.MAX_VALUE);
+        onEventLoop(ctx, storage.getChatChannelList(prefix, offset, CHANNEL_LIST_PAGE_SIZE), ctx.channel()::writeAndFlush);
     }
 
     /**
      * Lists all users in chat channel
      */
-    public void listUsers(final ChannelHandlerContext ctx, final Storage storage, final User user) {
+    public void listUsers(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user) {
         if (loginRequired(ctx, user)) {
             return;
         }
-        final var users = storage.getUserList(user);
-        users.forEach(u -> ctx.channel().writeAndFlush(String.format("%s%s", u, LINE_SEPARATOR)));
+        onEventLoop(ctx, storage.getUserList(user), ctx.channel()::writeAndFlush);
     }
 
     /**
      * Sends a message to all users in chat channel
      */
-    public void sendMessage(final ChannelHandlerContext ctx, final Storage storage, final User user, final String msg) {
+    public void sendMessage(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user, final String msg) {
         if (loginRequired(ctx, user)) {
             return;
         }
-        final var channel = storage.getCurrentChatChannel(user);
-        if (channel != null) {
-            channel.write(user, msg);
-        } else {
-            ctx.channel().writeAndFlush(String.format("You've not joined any channel.%s", LINE_SEPARATOR));
+        onEventLoop(ctx, storage.getCurrentChatChannel(user), channel -> {
+            if (channel != null) {
+                auditLog.message(user.getUsername(), channel.getName(), msg);
+                channel.write(user, msg);
+            } else {
+                ctx.channel().writeAndFlush(Responses.NOT_JOINED.buffer());
+            }
+        });
+    }
+
+    /**
+     * Searches history of the current channel
+     *
+     * @param argument words that found messages must contain
+     */
+    public void search(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user, final String argument) {
+        if (loginRequired(ctx, user)) {
+            return;
         }
+        if (argument == null) {
+            ctx.writeAndFlush(Responses.MISSING_SEARCH_TERMS.buffer());
+            return;
+        }
+        onEventLoop(ctx, storage.getCurrentChatChannel(user), channel -> {
+            if (channel == null) {
+                ctx.channel().writeAndFlush(Responses.NOT_JOINED.buffer());
+                return;
+            }
+            final var found = channel.search(argument, SEARCH_RESULT_LIMIT);
+            if (found.isEmpty()) {
+                ctx.writeAndFlush(Responses.NO_MESSAGES_FOUND.buffer());
+                return;
+            }
+            final var response = new StringBuilder();
+            for (int i = found.size() - 1; i >= 0; i--) {
+                response.append(found.get(i)).append(LINE_SEPARATOR);
+            }
+            ctx.writeAndFlush(response.toString());
+        });
     }
 
     /**
-     * If channel exists user is connected to it, if it has enough capacity.
+     * If channel exists user is connected to it, if it has enough capacity, and it becomes their current channel.
+     * A user who can only be in one channel leaves the previous one, otherwise they stay in their channels
+     * unless they've reached the limit, which is shown as an error.
      * Newly connected user receives 10 last messages from this channel.
      * If channel is full, and error message is shown
      */
-    public void joinChannel(final ChannelHandlerContext ctx, final Storage storage, final User user, final ChatChannel channel) {
+    public void joinChannel(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user, final ChatChannel channel) {
+        joinChannel(ctx, storage, user, channel, FULL_HISTORY);
+    }
+
+    /**
+     * Joins user to the channel like {@link ChatService#joinChannel(ChannelHandlerContext, AsyncStorage, User,
+     * ChatChannel)}, but only replays messages after the given sequence number. If some of them are no longer kept,
+     * the user is sent {@code /gap <channel> <sequence>} with the sequence number of the first replayed message,
+     * followed by all kept messages. If the channel has been evicted since it was looked up, its name is
+     * looked up again.
+     *
+     * @param seen sequence number of the last message the user has seen, or {@link ChatService#FULL_HISTORY}
+     */
+    public void joinChannel(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user,
+                            final ChatChannel channel, final long seen) {
         if (channel == null) {
             return;
         }
-        if (storage.anyChannelContainsUser(user)) {
-            storage.removeUserFromChannels(user);
+        if (maxChannelsPerUser > 1) {
+            onEventLoop(ctx, storage.getUserChatChannels(user), joined -> {
+                final var member = joined.contains(channel);
+                if (!member && joined.size() >= maxChannelsPerUser) {
+                    ctx.writeAndFlush(Responses.CHANNEL_LIMIT.format(ctx.alloc(), String.valueOf(maxChannelsPerUser)));
+                } else if (channel.containsUser(user) || channel.addUser(user)) {
+                    joined(ctx, storage, user, channel, seen);
+                } else if (channel.isEvicted()) {
+                    joinChannel(ctx, storage, user, channel.getName(), seen);
+                } else {
+                    ctx.writeAndFlush(Responses.CHANNEL_FULL.buffer());
+                    if (member) {
+                        onEventLoop(ctx, storage.removeUserFromChannel(user, channel), v -> { });
+                    }
+                }
+            });
+            return;
         }
+        final var left = storage.getUserChatChannels(user).thenCompose(previous -> {
+            if (previous.isEmpty()) {
+                return CompletableFuture.completedFuture(previous);
+            }
+            final var members = new ArrayList<ChatChannel>(previous.size());
+            for (final ChatChannel cc : previous) {
+                if (cc.containsUser(user)) {
+                    members.add(cc);
+                }
+            }
+            return storage.removeUserFromChannels(user)
+                    .thenCompose(v -> storage.removeChannelFromUser(user))
+                    .thenApply(v -> members);
+        });
+        onEventLoop(ctx, left, members -> {
+            for (final ChatChannel cc : members) {
+                auditLog.leave(user.getUsername(), cc.getName());
+            }
+            if (channel.addUser(user)) {
+                joined(ctx, storage, user, channel, seen);
+            } else if (channel.isEvicted()) {
+                joinChannel(ctx, storage, user, channel.getName(), seen);
+            } else {
+                ctx.writeAndFlush(Responses.CHANNEL_FULL.buffer());
+            }
+        });
+    }
 
-        if (channel.addUser(user)) {
-            ctx.writeAndFlush(String.format("You've joined channel %s.%s", channel.getName(), LINE_SEPARATOR));
-            final var messages = channel.getMessages();
-            if (!messages.isEmpty()) {
-                messages.forEach(m -> ctx.writeAndFlush(String.format("%s%s", m, LINE_SEPARATOR)));
+    private void joined(final ChannelHandlerContext ctx, final AsyncStorage storage, final User user,
+                        final ChatChannel channel, final long seen) {
+        auditLog.join(user.getUsername(), channel.getName());
+        ctx.writeAndFlush(Responses.CHANNEL_JOINED.format(ctx.alloc(), channel.getName()));
+        final var event = new HistoryReplayEvent();
+        event.begin();
+        final var history = seen == FULL_HISTORY ? channel.getHistory() : channel.getHistory(seen);
+        if (history.isGap()) {
+            final var gap = channel.getName() + " " + history.getFirstSequence();
+            ctx.writeAndFlush(Responses.HISTORY_GAP.format(ctx.alloc(), gap));
+        }
+        final var messages = history.getMessages();
+        var bytesWritten = 0L;
+        var sequence = history.getFirstSequence();
+        for (final String m : messages) {
+            final var line = Responses.HISTORY_LINE.format(ctx.alloc(), channel.numbered(sequence++, m));
+            bytesWritten += event.isEnabled() ? line.readableBytes() : 0;
+            ctx.writeAndFlush(line);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.channel = channel.getName();
+            event.messages = messages.size();
+            event.bytesWritten = bytesWritten;
+            event.resumed = seen != FULL_HISTORY;
+            event.gap = history.isGap();
+            event.commit();
+        }
+
+        final var assigned = storage.addChatChannel(channel)
+                .thenCompose(added -> storage.addChatChannelToUser(user, channel));
+        onEventLoop(ctx, assigned, added -> { });
+    }
+
+    /**
+     * Tells remaining users of the channel that the user has left it.
+     *
+     * @param argument channel name the user asked to leave, or null for the current channel
+     */
+    private void leftChannel(final ChannelHandlerContext ctx, final User user, final ChatChannel cc,
+                             final String argument) {
+        if (cc == null) {
+            ctx.channel().writeAndFlush(argument == null
+                    ? Responses.NOT_JOINED.buffer()
+                    : Responses.NOT_JOINED_CHANNEL.format(ctx.alloc(), argument));
+            return;
+        }
+        auditLog.leave(user.getUsername(), cc.getName());
+        presenceNotifier.userLeft(cc, user);
+    }
+
+    /**
+     * Channels the user was in before logging in, the current one first.
+     */
+    private CompletionStage<List<ChatChannel>> previousChannels(final AsyncStorage storage, final User user) {
+        if (maxChannelsPerUser > 1) {
+            return storage.getUserChatChannels(user);
+        }
+        return storage.getCurrentChatChannel(user).thenApply(cc -> cc == null ? List.of() : List.of(cc));
+    }
+
+    /**
+     * Parses sequence numbers following login and password, the ones without channel name are stored
+     * under an empty name.
+     *
+     * @return seen sequence numbers by channel name, or null if they're invalid
+     */
+    private static Map<String, Long> seenSequences(final String[] loginParts) {
+        final var seen = new HashMap<String, Long>();
+        for (int i = 2; i < loginParts.length; i++) {
+            final var separator = loginParts[i].lastIndexOf('=');
+            final var sequence = sequence(loginParts[i].substring(separator + 1));
+            if (sequence < 0 || separator == 0) {
+                return null;
             }
+            seen.put(separator < 0 ? "" : loginParts[i].substring(0, separator), sequence);
+        }
+        return seen;
+    }
 
-            if (!storage.getChatChannels().contains(channel)) {
-                storage.addChatChannel(channel);
+    /**
+     * @return sequence number, or -2 if it isn't a valid one
+     */
+    private static long sequence(final String text) {
+        try {
+            final var sequence = Long.parseLong(text);
+            return sequence < 0 ? -2 : sequence;
+        } catch (NumberFormatException e) {
+            return -2;
+        }
+    }
+
+    private static ChatChannel find(final List<ChatChannel> channels, final String name) {
+        for (final ChatChannel channel : channels) {
+            if (channel.getName().equals(name)) {
+                return channel;
             }
-            storage.addChatChannelToUser(user, channel);
-        } else {
-            ctx.writeAndFlush(String.format("The channel you've tried to connect is at max capacity.%s", LINE_SEPARATOR));
         }
+        return null;
     }
 
     /**
@@ -172,10 +568,45 @@ public class ChatService {
      */
     public boolean loginRequired(final ChannelHandlerContext ctx, final User user) {
         if (user == null) {
-            ctx.writeAndFlush(String.format("ERROR: Please login to system first.%s", LINE_SEPARATOR));
+            ctx.writeAndFlush(Responses.LOGIN_REQUIRED.buffer());
             return true;
         }
         return false;
     }
 
+    /**
+     * Passes result of the storage stage to action on the channel event loop. Stages that are already
+     * completed, like the ones of local storage, are handled right away without a task switch.
+     * If storage has failed, an error is shown instead.
+     */
+    private static <T> void onEventLoop(final ChannelHandlerContext ctx, final CompletionStage<T> stage,
+                                        final Consumer<? super T> action) {
+        final var future = stage.toCompletableFuture();
+        if (future.isDone()) {
+            final T result;
+            try {
+                result = future.join();
+            } catch (CompletionException | CancellationException e) {
+                storageFailed(ctx);
+                return;
+            }
+            action.accept(result);
+            return;
+        }
+        future.whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                storageFailed(ctx);
+                return;
+            }
+            try {
+                action.accept(result);
+            } catch (Throwable e) {
+                ctx.fireExceptionCaught(e);
+            }
+        }, ctx.executor());
+    }
+
+    private static void storageFailed(final ChannelHandlerContext ctx) {
+        ctx.writeAndFlush(Responses.STORAGE_UNAVAILABLE.buffer());
+    }
 }
@@ -0,0 +1,173 @@
+package chat.service;
+
+import chat.model.Broadcast;
+import chat.model.ChatChannel;
+import chat.model.User;
+import io.netty.channel.Channel;
+import io.netty.util.Timer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static chat.data.LocalStorage.LINE_SEPARATOR;
+
+/**
+ * Tells remaining users of a channel who has left it. Departures are collected per channel for a short window
+ * and sent as one line, such as {@code Users a, b and 37 others have left the channel.}, so that a mass
+ * disconnect doesn't write a line per departure to every remaining user. Users who are back in the channel
+ * when the window closes are left out.
+ * <p>
+ * A connection that isn't writable when the line is sent is skipped, and the departures it has missed are
+ * kept for it and merged into a later line, so it catches up with the latest state instead of a backlog.
+ */
+public class PresenceNotifier {
+
+    /**
+     * Names listed in a line about more than three departures, the others are counted.
+     */
+    private static final int LISTED_NAMES = 2;
+
+    public static final PresenceNotifier IMMEDIATE = new PresenceNotifier(0, null);
+
+    private final long windowMillis;
+    private final Timer timer;
+    private final Map<ChatChannel, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowMillis milliseconds departures are collected before they're sent, 0 to send them right away
+     * @param timer        timer closing the windows, owned by the server, null to send departures right away
+     */
+    public PresenceNotifier(final long windowMillis, final Timer timer) {
+        this.windowMillis = windowMillis;
+        this.timer = timer;
+    }
+
+    /**
+     * Tells remaining users of the channel that the user has left it, right away or when the window closes.
+     */
+    public void userLeft(final ChatChannel channel, final User user) {
+        if (timer == null) {
+            final var message = channel.tagged(text(List.of(user.toString()))) + LINE_SEPARATOR;
+            channel.getUsers().forEach(u -> u.writeAndFlush(message));
+            return;
+        }
+        final var created = new boolean[1];
+        pending.compute(channel, (c, p) -> {
+            final var updated = p != null ? p : new Pending();
+            updated.departed.add(user);
+            created[0] = p == null;
+            return updated;
+        });
+        if (created[0]) {
+            schedule(channel);
+        }
+    }
+
+    /**
+     * Number of channels with departures waiting to be sent, for monitoring.
+     */
+    public int getPendingChannelCount() {
+        return pending.size();
+    }
+
+    private void schedule(final ChatChannel channel) {
+        timer.newTimeout(timeout -> flush(channel), windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(final ChatChannel channel) {
+        final var flushed = pending.remove(channel);
+        if (flushed == null) {
+            return;
+        }
+        final var departed = new ArrayList<String>();
+        for (final User u : flushed.departed) {
+            if (!channel.containsUser(u)) {
+                departed.add(u.toString());
+            }
+        }
+        final var users = channel.getUsers();
+        final var text = departed.isEmpty() ? null : channel.tagged(text(departed)) + LINE_SEPARATOR;
+        final var broadcast = text == null ? null : new Broadcast(text, users.size());
+        final var behind = new HashMap<Channel, Set<User>>();
+        try {
+            for (final User u : users) {
+                for (final Channel connection : u.getChannels()) {
+                    final var missed = flushed.missed.get(connection);
+                    if (!connection.isActive() || (missed == null && broadcast == null)) {
+                        continue;
+                    }
+                    if (!connection.isWritable()) {
+                        final var kept = missed != null ? missed : new LinkedHashSet<User>();
+                        kept.addAll(flushed.departed);
+                        behind.put(connection, kept);
+                    } else if (missed == null) {
+                        connection.writeAndFlush(broadcast.messageFor(connection));
+                    } else {
+                        missed.addAll(flushed.departed);
+                        writeMissed(channel, connection, missed);
+                    }
+                }
+            }
+        } finally {
+            if (broadcast != null) {
+                broadcast.release();
+            }
+        }
+        if (!behind.isEmpty()) {
+            // retried after another window even without new departures, until connections catch up or go away
+            pending.compute(channel, (c, p) -> {
+                final var updated = p != null ? p : new Pending();
+                behind.forEach((connection, missed) -> updated.missed.merge(connection, missed, (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                }));
+                if (p == null) {
+                    schedule(channel);
+                }
+                return updated;
+            });
+        }
+    }
+
+    private static void writeMissed(final ChatChannel channel, final Channel connection, final Set<User> missed) {
+        final var departed = new ArrayList<String>();
+        for (final User u : missed) {
+            if (!channel.containsUser(u)) {
+                departed.add(u.toString());
+            }
+        }
+        if (!departed.isEmpty()) {
+            connection.writeAndFlush(channel.tagged(text(departed)) + LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * @return line about users who have left, listing at most three of them by name
+     */
+    static String text(final List<String> departed) {
+        final var count = departed.size();
+        if (count == 1) {
+            return String.format("User %s has left the channel.", departed.get(0));
+        }
+        final var text = new StringBuilder("Users ");
+        if (count <= 3) {
+            text.append(String.join(", ", departed.subList(0, count - 1)))
+                    .append(" and ").append(departed.get(count - 1));
+        } else {
+            text.append(String.join(", ", departed.subList(0, LISTED_NAMES)))
+                    .append(" and ").append(count - LISTED_NAMES).append(" others");
+        }
+        return text.append(" have left the channel.").toString();
+    }
+
+    /**
+     * Departures collected during the current window of a channel, and departures missed by connections
+     * that weren't writable. Only accessed in {@link ConcurrentHashMap#compute} and after removal from the map.
+     */
+    private static final class Pending {
+
+        private final Set<User> departed = new LinkedHashSet<>();
+        private final Map<Channel, Set<User>> missed = new HashMap<>();
+    }
+}
@@ -0,0 +1,92 @@
+package chat.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import static chat.data.LocalStorage.LINE_SEPARATOR;
+
+/**
+ * Catalog of replies of {@link ChatService}, encoded once when the class is loaded. Constant replies are
+ * shared read-only direct buffers, every write gets its own duplicate of them. Parameterized replies are
+ * encoded from their pre-encoded parts straight into a pooled direct buffer of the connection.
+ */
+public final class Responses {
+
+    public static final Constant MISSING_ARGUMENTS = new Constant("ERROR: Missing arguments.");
+    public static final Constant INVALID_ARGUMENTS = new Constant("ERROR: Invalid arguments.");
+    public static final Constant WRONG_PASSWORD = new Constant("ERROR: Wrong password.");
+    public static final Constant MISSING_CHANNEL_NAME = new Constant("ERROR: Please input channel name.");
+    public static final Constant MISSING_SEARCH_TERMS = new Constant("ERROR: Please input search terms.");
+    public static final Constant LOGIN_REQUIRED = new Constant("ERROR: Please login to system first.");
+    public static final Constant STORAGE_UNAVAILABLE = new Constant("ERROR: Storage is unavailable, please try again.");
+    public static final Constant NOT_JOINED = new Constant("You've not joined any channel.");
+    public static final Constant CHANNEL_FULL = new Constant("The channel you've tried to connect is at max capacity.");
+    public static final Constant NO_MESSAGES_FOUND = new Constant("No messages found.");
+
+    public static final Template WELCOME = new Template("Welcome %s.");
+    public static final Template LOGGED_IN = new Template("You've logged in as %s.");
+    public static final Template CHANNEL_CREATED = new Template("New channel %s has been created.");
+    public static final Template CHANNEL_JOINED = new Template("You've joined channel %s.");
+    public static final Template HISTORY_LINE = new Template("%s");
+    public static final Template HISTORY_GAP = new Template("/gap %s");
+    public static final Template CHANNEL_LIMIT = new Template("ERROR: You can't join more than %s channels.");
+    public static final Template NOT_JOINED_CHANNEL = new Template("You've not joined channel %s.");
+    public static final Template TARGET_SET = new Template("Your messages are now sent to channel %s.");
+
+    private Responses() {
+    }
+
+    private static ByteBuf encode(final String text) {
+        final var bytes = text.getBytes(CharsetUtil.UTF_8);
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes).asReadOnly());
+    }
+
+    /**
+     * Reply that never changes, followed by a line separator.
+     */
+    public static final class Constant {
+
+        private final ByteBuf encoded;
+
+        private Constant(final String text) {
+            this.encoded = encode(text + LINE_SEPARATOR);
+        }
+
+        /**
+         * @return duplicate of the shared reply, with its own indexes, to be written to one connection
+         */
+        public ByteBuf buffer() {
+            return encoded.duplicate();
+        }
+    }
+
+    /**
+     * Reply with one argument in place of {@code %s}, followed by a line separator.
+     */
+    public static final class Template {
+
+        private final ByteBuf prefix;
+        private final ByteBuf suffix;
+
+        private Template(final String format) {
+            final var argument = format.indexOf("%s");
+            this.prefix = encode(format.substring(0, argument));
+            this.suffix = encode(format.substring(argument + 2) + LINE_SEPARATOR);
+        }
+
+        /**
+         * Encodes reply into a new buffer of the allocator, which the caller writes or releases.
+         */
+        public ByteBuf format(final ByteBufAllocator allocator, final CharSequence argument) {
+            final var buffer = allocator.directBuffer(prefix.readableBytes() + ByteBufUtil.utf8MaxBytes(argument)
+                    + suffix.readableBytes());
+            buffer.writeBytes(prefix, prefix.readerIndex(), prefix.readableBytes());
+            ByteBufUtil.writeUtf8(buffer, argument);
+            buffer.writeBytes(suffix, suffix.readerIndex(), suffix.readableBytes());
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package chat.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * Complete WebSocket frame, header included, written to the connection as is.
+ */
+public class PreFramedFrame extends DefaultByteBufHolder {
+
+    public PreFramedFrame(final ByteBuf frame) {
+        super(frame);
+    }
+}
@@ -0,0 +1,54 @@
+package chat.websocket;
+
+import chat.model.BroadcastEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Frames broadcasts as a single unmasked text frame shared by all WebSocket recipients. Server frames are
+ * identical for every connection unless they're compressed, so broadcasts to rooms small enough for
+ * permessage-deflate are left to each connection's compressor instead. RFC 7692 allows uncompressed
+ * messages on connections that negotiated compression.
+ */
+public class WebSocketBroadcastEncoder implements BroadcastEncoder {
+
+    private static final int FIN_TEXT = 0x81;
+
+    private final int deflateMaxRecipients;
+
+    /**
+     * @param deflateMaxRecipients largest number of recipients that get broadcasts compressed for each of them,
+     *                             negative if compression is disabled
+     */
+    public WebSocketBroadcastEncoder(final int deflateMaxRecipients) {
+        this.deflateMaxRecipients = deflateMaxRecipients;
+    }
+
+    @Override
+    public ByteBuf encode(final String text, final int recipients) {
+        if (recipients <= deflateMaxRecipients) {
+            return null;
+        }
+        final var length = ByteBufUtil.utf8Bytes(text);
+        final var headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        final var frame = ByteBufAllocator.DEFAULT.buffer(headerLength + length);
+        frame.writeByte(FIN_TEXT);
+        if (length < 126) {
+            frame.writeByte(length);
+        } else if (length <= 0xFFFF) {
+            frame.writeByte(126);
+            frame.writeShort(length);
+        } else {
+            frame.writeByte(127);
+            frame.writeLong(length);
+        }
+        ByteBufUtil.reserveAndWriteUtf8(frame, text, length);
+        return frame;
+    }
+
+    @Override
+    public Object message(final ByteBuf encoded) {
+        return new PreFramedFrame(encoded);
+    }
+}
@@ -0,0 +1,52 @@
+package chat.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.util.List;
+
+/**
+ * Maps WebSocket text frames onto the line protocol. Every line of an inbound frame is passed on as a command,
+ * outbound strings and buffers are sent as text frames with the same text the line protocol would send,
+ * and {@link PreFramedFrame pre-framed} broadcasts are written as is.
+ */
+@ChannelHandler.Sharable
+public class WebSocketLineCodec extends MessageToMessageCodec<TextWebSocketFrame, Object> {
+
+    @Override
+    public boolean acceptOutboundMessage(final Object msg) {
+        return msg instanceof CharSequence || msg instanceof ByteBuf || msg instanceof PreFramedFrame;
+    }
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final Object msg, final List<Object> out) {
+        if (msg instanceof PreFramedFrame frame) {
+            out.add(frame.content().retain());
+        } else if (msg instanceof ByteBuf buffer) {
+            out.add(new TextWebSocketFrame(buffer.retain()));
+        } else {
+            out.add(new TextWebSocketFrame(ByteBufUtil.writeUtf8(ctx.alloc(), (CharSequence) msg)));
+        }
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final TextWebSocketFrame frame, final List<Object> out) {
+        final var text = frame.text();
+        var start = 0;
+        while (start < text.length()) {
+            var end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            final var lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            if (lineEnd > start) {
+                out.add(text.substring(start, lineEnd));
+            }
+            start = end + 1;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package chat.websocket;
+
+import chat.handler.ChatHandler;
+import chat.model.BroadcastEncoder;
+import chat.server.ChatServerConfig;
+import chat.server.ChatServerInitializer;
+import chat.server.OutboundAccountingHandler;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketDecoderConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline of WebSocket connections at {@link #PATH}. Frames carry the commands and responses of the line
+ * protocol and are handled by the same service and storage as the line connections of the server.
+ */
+public class WebSocketServerInitializer extends ChannelInitializer<Channel> {
+
+    public static final String PATH = "/chat";
+    private static final int MAX_MESSAGE_LENGTH = 8192;
+
+    private final ChatServerConfig config;
+    private final ChatServerInitializer lineInitializer;
+    private final WebSocketLineCodec codec = new WebSocketLineCodec();
+    private final WebSocketBroadcastEncoder broadcastEncoder;
+    private final WebSocketServerProtocolConfig protocolConfig;
+
+    /**
+     * @param lineInitializer initializer of line connections, whose service, storage and limits are shared
+     */
+    public WebSocketServerInitializer(final ChatServerConfig config, final ChatServerInitializer lineInitializer) {
+        this.config = config;
+        this.lineInitializer = lineInitializer;
+        this.broadcastEncoder = new WebSocketBroadcastEncoder(
+                config.isWebSocketDeflate() ? config.getWebSocketDeflateMaxRecipients() : -1);
+        this.protocolConfig = WebSocketServerProtocolConfig.newBuilder()
+                .websocketPath(PATH)
+                .decoderConfig(WebSocketDecoderConfig.newBuilder()
+                        .maxFramePayloadLength(MAX_MESSAGE_LENGTH)
+                        .allowExtensions(config.isWebSocketDeflate())
+                        .build())
+                .build();
+    }
+
+    @Override
+    protected void initChannel(final Channel ch) {
+        ch.attr(BroadcastEncoder.KEY).set(broadcastEncoder);
+        final var pipeline = ch.pipeline();
+        if (lineInitializer.getSslContext() != null) {
+            pipeline.addLast("tls", lineInitializer.getSslContext().newHandler(ch.alloc()));
+        }
+        pipeline.addLast("memory", new OutboundAccountingHandler(lineInitializer.getMemoryTracker()));
+        if (config.getReaderIdleSeconds() > 0 || config.getWriterIdleSeconds() > 0) {
+            pipeline.addLast("idleState", new IdleStateHandler(config.getReaderIdleSeconds(),
+                    config.getWriterIdleSeconds(), 0, TimeUnit.SECONDS));
+        }
+        pipeline.addLast("http", new HttpServerCodec());
+        pipeline.addLast("httpAggregator", new HttpObjectAggregator(MAX_MESSAGE_LENGTH));
+        if (config.isWebSocketDeflate()) {
+            pipeline.addLast("deflate", new WebSocketServerCompressionHandler());
+        }
+        pipeline.addLast("webSocket", new WebSocketServerProtocolHandler(protocolConfig));
+        pipeline.addLast("frameAggregator", new WebSocketFrameAggregator(MAX_MESSAGE_LENGTH));
+        pipeline.addLast("lines", codec);
+        pipeline.addLast("idle", lineInitializer.getIdleConnectionHandler());
+        pipeline.addLast("handler", new ChatHandler(lineInitializer.getChatService(), lineInitializer.getStorage()));
+    }
+}
@@ -1,24 +1,43 @@
 package chat;
 
+import chat.data.AsyncStorage;
 import chat.data.Storage;
 import chat.model.*;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Function;
 
 import static org.mockito.Mockito.*;
 
 public class ChatServerTestBase {
 
     protected final Storage storage = mock(Storage.class);
+    protected final AsyncStorage asyncStorage = AsyncStorage.completed(storage);
     public final Set<ChatChannel> channels = new HashSet<>();
 
     {
         when(storage.getChatChannels()).thenReturn(channels);
+        when(storage.getChatChannel(any())).thenAnswer(e -> channels.stream()
+                .filter(ch -> ch.getName().equals(e.getArgument(0)))
+                .findFirst()
+                .orElse(null));
+        when(storage.getOrAddChatChannel(any(), any())).thenAnswer(e -> {
+            final var existing = storage.getChatChannel(e.getArgument(0));
+            if (existing != null) {
+                return existing;
+            }
+            final var created = e.<Function<String, ChatChannel>>getArgument(1).apply(e.getArgument(0));
+            channels.add(created);
+            return created;
+        });
         doAnswer(e -> {
             channels.add(e.getArgument(0));
             return null;
         }).when(storage).addChatChannel(any());
+        when(storage.getUserChatChannels(any())).thenAnswer(e -> channels.stream()
+                .filter(ch -> ch.getUsers().contains(e.getArgument(0)))
+                .toList());
         when(storage.anyChannelContainsUser(any()))
                 .thenAnswer(e -> channels.stream()
                         .anyMatch(ch -> ch.getUsers().contains(e.getArgument(0))));
@@ -0,0 +1,133 @@
+package chat.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncAuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEventsAreWrittenInOrderAsEscapedLines() throws IOException {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 16, OverflowPolicy.BLOCK, 1_000);
+        auditLog.start();
+        auditLog.login("john");
+        auditLog.join("john", "room");
+        auditLog.message("john", "room", "tab\there\\");
+        auditLog.leave("john", "room");
+        auditLog.close();
+
+        final var fields = readLines(false).stream().map(line -> line.split("\t", -1)).toList();
+        assertEquals(4, fields.size());
+        assertEquals(List.of("LOGIN", "JOIN", "MESSAGE", "LEAVE"), fields.stream().map(f -> f[1]).toList());
+        assertArrayEquals(new String[]{"MESSAGE", "john", "room", "tab\\there\\\\"},
+                List.of(fields.get(2)).subList(1, 5).toArray());
+        assertTrue(Long.parseLong(fields.get(0)[0]) > 0);
+        assertEquals(4, auditLog.getWrittenEvents());
+        assertEquals(0, auditLog.getPendingEvents());
+    }
+
+    @Test
+    void testFilesAreRotatedAndCompressed() throws IOException {
+        final var auditLog = new AsyncAuditLog(directory, 1_024, true, 1_024, OverflowPolicy.BLOCK, 1_000);
+        auditLog.start();
+        for (int i = 0; i < 500; i++) {
+            auditLog.message("john", "room", "message " + i);
+        }
+        auditLog.close();
+
+        try (final var files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+        final var lines = readLines(true);
+        assertEquals(500, lines.size());
+        assertTrue(lines.get(499).endsWith("\tmessage 499"));
+    }
+
+    @Test
+    void testDropPolicyCountsEventsThatDontFit() {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 4, OverflowPolicy.DROP, 1_000);
+        for (int i = 0; i < 10; i++) {
+            auditLog.login("john");
+        }
+        assertEquals(4, auditLog.getRecordedEvents());
+        assertEquals(6, auditLog.getDroppedEvents());
+        assertEquals(0, auditLog.getBlockedEvents());
+
+        auditLog.start();
+        auditLog.close();
+        assertEquals(4, auditLog.getWrittenEvents());
+    }
+
+    @Test
+    void testBlockPolicyDropsEventAfterTimeout() {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 4, OverflowPolicy.BLOCK, 1);
+        for (int i = 0; i < 5; i++) {
+            auditLog.login("john");
+        }
+        assertEquals(4, auditLog.getRecordedEvents());
+        assertEquals(1, auditLog.getBlockedEvents());
+        assertEquals(1, auditLog.getDroppedEvents());
+    }
+
+    @Test
+    void testBlockPolicyWaitsForWriter() throws Exception {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 4, OverflowPolicy.BLOCK, 10_000);
+        auditLog.start();
+        final var producers = new ArrayList<Thread>();
+        for (int p = 0; p < 4; p++) {
+            final var producer = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    auditLog.message("john", "room", "message " + i);
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        auditLog.close();
+
+        assertEquals(0, auditLog.getDroppedEvents());
+        assertEquals(4_000, auditLog.getWrittenEvents());
+        assertEquals(4_000, readLines(false).size());
+    }
+
+    @Test
+    void testEventsAfterCloseAreDropped() {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 4, OverflowPolicy.BLOCK, 1_000);
+        auditLog.start();
+        auditLog.close();
+        auditLog.login("john");
+        assertEquals(1, auditLog.getDroppedEvents());
+        assertEquals(0, auditLog.getRecordedEvents());
+    }
+
+    private List<String> readLines(final boolean compressed) throws IOException {
+        final var lines = new ArrayList<String>();
+        try (final var files = Files.list(directory)) {
+            for (final Path file : files.sorted().toList()) {
+                try (InputStream in = compressed
+                        ? new GZIPInputStream(Files.newInputStream(file))
+                        : Files.newInputStream(file)) {
+                    final var content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    content.lines().forEach(lines::add);
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,185 @@
+package chat.cluster;
+
+import chat.server.ChatServer;
+import chat.server.ChatServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterIT {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    private final List<ChatServer> servers = new ArrayList<>();
+    private final List<Socket> clients = new ArrayList<>();
+    private String clusterNodes;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        clusterNodes = "a=127.0.0.1:" + freePort() + ",b=127.0.0.1:" + freePort();
+        startNode("a");
+        startNode("b");
+        awaitLiveNodes(servers.get(0), 2);
+        awaitLiveNodes(servers.get(1), 2);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final Socket client : clients) {
+            client.close();
+        }
+        for (final ChatServer server : servers) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testMessageReachesUsersOnOtherNode() throws Exception {
+        final var alice = connect(servers.get(0));
+        final var bob = connect(servers.get(1));
+        login(alice, "alice");
+        login(bob, "bob");
+        join(alice, "lobby");
+        join(bob, "lobby");
+        awaitSubscribed(servers.get(0).getClusterNode(), "lobby");
+        awaitSubscribed(servers.get(1).getClusterNode(), "lobby");
+
+        send(bob, "hello from b");
+        awaitLine(alice, "bob: hello from b");
+        send(alice, "hello from a");
+        awaitLine(bob, "alice: hello from a");
+    }
+
+    @Test
+    void testRoomIsForgottenWhenLastLocalUserLeaves() throws Exception {
+        final var node = servers.get(0).getClusterNode();
+        final var alice = connect(servers.get(0));
+        login(alice, "alice");
+        join(alice, "lobby");
+        awaitLocalRooms(node, 1);
+
+        send(alice, "/leave");
+        awaitLocalRooms(node, 0);
+    }
+
+    @Test
+    void testRoomsMoveToRemainingNodeWhenNodeLeaves() throws Exception {
+        final var a = servers.get(0).getClusterNode();
+        var room = "room";
+        for (int i = 0; a.ownerOf(room).equals("a"); i++) {
+            room = "room" + i;
+        }
+
+        servers.remove(1).stop();
+        awaitLiveNodes(servers.get(0), 1);
+
+        assertEquals("a", a.ownerOf(room));
+    }
+
+    private void startNode(final String nodeId) throws Exception {
+        final var config = new ChatServerConfig();
+        config.setPort(0);
+        config.setNodeId(nodeId);
+        config.setClusterNodes(clusterNodes);
+        final var server = new ChatServer(config);
+        server.start();
+        servers.add(server);
+    }
+
+    private Client connect(final ChatServer server) throws IOException {
+        final var socket = new Socket("127.0.0.1", server.getBoundPort());
+        socket.setSoTimeout(100);
+        clients.add(socket);
+        return new Client(new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8),
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+    }
+
+    private static void login(final Client client, final String name) throws Exception {
+        send(client, "/login " + name + " pass");
+        awaitLine(client, "Welcome " + name + ".");
+    }
+
+    private static void join(final Client client, final String room) throws Exception {
+        send(client, "/join " + room);
+        awaitLine(client, "You've joined channel " + room + ".");
+    }
+
+    private static void send(final Client client, final String line) {
+        client.writer().print(line + "\n");
+        client.writer().flush();
+    }
+
+    private static void awaitLine(final Client client, final String expected) throws Exception {
+        final var received = new ArrayList<String>();
+        if (!readLine(client, expected, TIMEOUT_MILLIS, received)) {
+            fail("Expected " + expected + ", received " + received);
+        }
+    }
+
+    private static boolean readLine(final Client client, final String expected, final long timeoutMillis,
+                                    final List<String> received) throws IOException {
+        final var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                final var line = client.reader().readLine();
+                assertNotNull(line, "Connection closed, received " + received);
+                if (line.equals(expected)) {
+                    return true;
+                }
+                received.add(line);
+            } catch (SocketTimeoutException e) {
+                // Keep polling until the deadline.
+            }
+        }
+        return false;
+    }
+
+    private static void awaitLiveNodes(final ChatServer server, final int count) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getClusterNode().getLiveNodeCount() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Cluster has not converged");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Room membership reaches the owner asynchronously, messages are only relayed once it's acknowledged.
+     */
+    private static void awaitSubscribed(final ClusterNode node, final String room) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!node.isSubscribed(room)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Room " + room + " is not subscribed");
+            Thread.sleep(20);
+        }
+    }
+
+    private static void awaitLocalRooms(final ClusterNode node, final int count) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (node.getLocalRoomCount() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Local rooms: " + node.getLocalRoomCount());
+            Thread.sleep(20);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Client(PrintWriter writer, BufferedReader reader) {
+    }
+}
@@ -0,0 +1,32 @@
+package chat.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void testOnlyRoomsOfRemovedNodeMove() {
+        final var before = new ConsistentHashRing(List.of("a", "b", "c"));
+        final var after = new ConsistentHashRing(List.of("a", "b"));
+        var moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            final var room = "room" + i;
+            final var owner = before.ownerOf(room);
+            if (!owner.equals("c")) {
+                assertEquals(owner, after.ownerOf(room));
+            } else {
+                moved++;
+            }
+        }
+        assertTrue(moved > 200 && moved < 460, "Rooms of removed node: " + moved);
+    }
+
+    @Test
+    void testEmptyRingHasNoOwner() {
+        assertNull(new ConsistentHashRing(List.of()).ownerOf("room"));
+    }
+}
@@ -0,0 +1,25 @@
+package chat.cluster;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayFrameTest {
+
+    @Test
+    void testForwardedFrameKeepsHopCountOnTheWire() {
+        final var frame = new RelayFrame(RelayFrame.PUBLISH, "a", "room", "john: hello").forwarded();
+        final var buffer = frame.encode(UnpooledByteBufAllocator.DEFAULT);
+        try {
+            final var decoded = RelayFrame.decode(buffer);
+            assertEquals(RelayFrame.PUBLISH, decoded.getType());
+            assertEquals(1, decoded.getHops());
+            assertEquals("a", decoded.getOrigin());
+            assertEquals("room", decoded.getRoom());
+            assertEquals("john: hello", decoded.getPayload());
+        } finally {
+            buffer.release();
+        }
+    }
+}
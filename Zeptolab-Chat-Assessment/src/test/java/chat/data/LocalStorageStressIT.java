@@ -0,0 +1,61 @@
+package chat.data;
+
+import io.netty.util.HashedWheelTimer;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link StorageStressHarness} against {@link LocalStorage}. Sizes can be raised with
+ * {@code chat.stress.*} system properties, to measure changes to locking on a longer run.
+ */
+class LocalStorageStressIT {
+
+    private static final int WORKERS = Integer.getInteger("chat.stress.workers", 8);
+    private static final int USERS_PER_WORKER = Integer.getInteger("chat.stress.usersPerWorker", 20);
+    private static final int ROOMS = Integer.getInteger("chat.stress.rooms", 8);
+    private static final int OPERATIONS = Integer.getInteger("chat.stress.operations", 20_000);
+    private static final long SEED = Long.getLong("chat.stress.seed", 42);
+    private static final long IDLE_ROOM_TTL_MILLIS = 20;
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Test
+    void invariantsHoldUnderConcurrentCommands() throws Exception {
+        final var result = new StorageStressHarness(new LocalStorage(), WORKERS, USERS_PER_WORKER, ROOMS,
+                OPERATIONS, SEED).run();
+        System.out.printf("LocalStorage stress with %d workers: %s%n", WORKERS, result);
+        assertNoViolations(result);
+    }
+
+    /**
+     * Rooms outnumber users, so that they're often left empty and evicted, and joined again with restored history.
+     */
+    @Test
+    void invariantsHoldWhileIdleRoomsAreEvicted() throws Exception {
+        final var timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+        try {
+            final var storage = new LocalStorage(IDLE_ROOM_TTL_MILLIS, timer);
+            final var result = new StorageStressHarness(storage, WORKERS, USERS_PER_WORKER,
+                    WORKERS * USERS_PER_WORKER, OPERATIONS, SEED).run();
+            System.out.printf("LocalStorage stress with %d workers and idle room eviction: %s%n", WORKERS, result);
+            assertNoViolations(result);
+
+            final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!storage.getChatChannels().isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline, "Idle rooms were not evicted");
+                Thread.sleep(20);
+            }
+            assertTrue(storage.getSpilledRoomCount() > 0);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static void assertNoViolations(final StorageStressHarness.Result result) {
+        assertEquals(WORKERS * (long) OPERATIONS, result.getOperations());
+        assertTrue(result.getViolations().isEmpty(), () -> String.join(System.lineSeparator(),
+                result.getViolations().subList(0, Math.min(20, result.getViolations().size()))));
+    }
+}
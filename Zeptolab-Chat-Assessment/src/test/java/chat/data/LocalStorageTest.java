@@ -0,0 +1,303 @@
+package chat.data;
+
+import chat.model.ChatChannel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LocalStorageTest {
+
+    private static final long TTL_MILLIS = 60_000;
+
+    private final Timer timer = mock(Timer.class);
+    private final List<Timeout> timeouts = new ArrayList<>();
+    private LocalStorage storage = new LocalStorage(TTL_MILLIS, timer);
+
+    {
+        when(timer.newTimeout(any(), anyLong(), any())).thenAnswer(e -> {
+            final var timeout = mock(Timeout.class);
+            timeouts.add(timeout);
+            return timeout;
+        });
+    }
+
+    @Test
+    void testEmptyRoomIsEvictedAndHistoryRestoredOnNextJoin() throws Exception {
+        final var room = joinedRoom("room", "1", "2", "3");
+        storage.removeUserFromChannels(room.getUsers().iterator().next());
+
+        runEviction();
+
+        assertTrue(storage.getChatChannels().isEmpty());
+        assertEquals(1, storage.getSpilledRoomCount());
+        assertEquals(0, storage.getPendingEvictionCount());
+        final var reloaded = new ChatChannel("room", 10);
+        storage.addChatChannel(reloaded);
+        assertEquals(List.of("1", "2", "3"), reloaded.getMessages());
+        assertEquals(0, storage.getSpilledRoomCount());
+    }
+
+    @Test
+    void testSequenceNumbersContinueAfterEviction() throws Exception {
+        final var room = joinedRoom("room");
+        for (int i = 1; i <= 12; i++) {
+            room.addMessage(String.valueOf(i));
+        }
+        storage.removeUserFromChannels(room.getUsers().iterator().next());
+
+        runEviction();
+
+        final var reloaded = new ChatChannel("room", 10);
+        storage.addChatChannel(reloaded);
+        assertEquals(12, reloaded.getLastSequence());
+        final var missed = reloaded.getHistory(10);
+        assertEquals(11, missed.getFirstSequence());
+        assertEquals(List.of("11", "12"), missed.getMessages());
+        assertFalse(missed.isGap());
+        assertTrue(reloaded.getHistory(1).isGap());
+    }
+
+    @Test
+    void testEvictedRoomIsNotRevivedByStaleJoin() throws Exception {
+        final var room = joinedRoom("room", "1");
+        final var user = room.getUsers().iterator().next();
+        storage.removeUserFromChannels(user);
+        runEviction();
+
+        assertFalse(room.addUser(user));
+        storage.addChatChannel(room);
+        assertTrue(storage.getChatChannels().isEmpty());
+
+        final var reloaded = storage.getOrAddChatChannel("room", n -> new ChatChannel(n, 10));
+        assertNotSame(room, reloaded);
+        assertEquals(List.of("1"), reloaded.getMessages());
+        assertTrue(reloaded.addUser(user));
+    }
+
+    @Test
+    void testRoomAddedForFailedJoinIsEvicted() throws Exception {
+        final var room = new ChatChannel("room", 10);
+        storage.addChatChannel(room);
+
+        runEviction();
+
+        assertTrue(storage.getChatChannels().isEmpty());
+        assertEquals(0, storage.getSpilledRoomCount());
+    }
+
+    @Test
+    void testChannelIsLookedUpByNameAndListedAsSnapshot() {
+        final var room = joinedRoom("room");
+        final var channels = storage.getChatChannels();
+        storage.addChatChannel(new ChatChannel("other", 10));
+
+        assertSame(room, storage.getChatChannel("room"));
+        assertNull(storage.getChatChannel("missing"));
+        assertEquals(List.of(room), List.copyOf(channels));
+    }
+
+    @Test
+    void testConcurrentFirstJoinsShareOneChannel() {
+        final var threads = 4;
+        for (int run = 0; run < 200; run++) {
+            final var name = "room-" + run;
+            final var start = new CountDownLatch(1);
+            final var joins = new ArrayList<CompletableFuture<ChatChannel>>();
+            for (int i = 0; i < threads; i++) {
+                final var user = storage.createUser(context(), name + "-" + i, "pass");
+                joins.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    final var room = storage.getOrAddChatChannel(name, n -> new ChatChannel(n, 10));
+                    room.addUser(user);
+                    storage.addChatChannelToUser(user, room);
+                    return room;
+                }));
+            }
+            start.countDown();
+            for (final CompletableFuture<ChatChannel> join : joins) {
+                assertSame(join.join(), storage.getChatChannel(name));
+            }
+            assertEquals(threads, storage.getChatChannel(name).getUsers().size(), name);
+        }
+        assertEquals(200, storage.getChatChannels().size());
+    }
+
+    @Test
+    void testUsersAndChannelsGetDenseIds() {
+        final var first = storage.createUser(context(), "first", "pass");
+        final var second = storage.createUser(context(), "second", "pass");
+        final var a = new ChatChannel("a", 10);
+        final var b = new ChatChannel("b", 10);
+        assertAll(() -> assertEquals(0, first.getId()),
+                () -> assertEquals(1, second.getId()),
+                () -> assertEquals(a.getId() + 1, b.getId()));
+    }
+
+    @Test
+    void testChannelsOfUsersAreKeptWhenUserTableGrows() {
+        final var rooms = new ArrayList<ChatChannel>();
+        for (int i = 0; i < 40; i++) {
+            rooms.add(joinedRoom("room-" + i));
+        }
+        for (final ChatChannel room : rooms) {
+            final var user = room.getUsers().iterator().next();
+            assertSame(room, storage.getCurrentChatChannel(user));
+            assertEquals(List.of(room), storage.getUserChatChannels(user));
+        }
+        assertSame(rooms.get(7), storage.getChatChannel("room-7"));
+    }
+
+    @Test
+    void testHistorySpilledLongestAgoIsDroppedOverBudget() throws Exception {
+        final var sizing = joinedRoom("sizing", "1", "2", "3");
+        storage.removeUserFromChannels(sizing.getUsers().iterator().next());
+        runEviction();
+        final var spilledRoomBytes = storage.getSpilledBytes();
+
+        storage = new LocalStorage(TTL_MILLIS, timer, spilledRoomBytes * 2);
+        for (final String name : List.of("first", "second", "third")) {
+            final var room = joinedRoom(name, "1", "2", "3");
+            storage.removeUserFromChannels(room.getUsers().iterator().next());
+            runEviction();
+        }
+
+        assertEquals(2, storage.getSpilledRoomCount());
+        assertEquals(spilledRoomBytes * 2, storage.getSpilledBytes());
+        final var first = new ChatChannel("first", 10);
+        storage.addChatChannel(first);
+        assertEquals(List.of(), first.getMessages());
+        assertEquals(3, first.getLastSequence());
+        assertTrue(first.getHistory(1).isGap());
+        assertFalse(first.getHistory(3).isGap());
+        final var third = new ChatChannel("third", 10);
+        storage.addChatChannel(third);
+        assertEquals(List.of("1", "2", "3"), third.getMessages());
+        assertEquals(spilledRoomBytes, storage.getSpilledBytes());
+    }
+
+    @Test
+    void testRoomJoinedBeforeTtlIsKept() throws Exception {
+        final var room = joinedRoom("room", "1");
+        final var user = room.getUsers().iterator().next();
+        storage.removeUserFromChannels(user);
+        room.addUser(user);
+
+        runEviction();
+
+        assertEquals(List.of(room), List.copyOf(storage.getChatChannels()));
+        assertEquals(0, storage.getSpilledRoomCount());
+    }
+
+    @Test
+    void testRejoinedRoomKeepsOnePendingEviction() throws Exception {
+        final var room = joinedRoom("room");
+        final var user = room.getUsers().iterator().next();
+        for (int i = 0; i < 3; i++) {
+            storage.removeUserFromChannels(user);
+            room.addUser(user);
+        }
+        storage.removeUserFromChannels(user);
+
+        assertEquals(4, timeouts.size());
+        for (final Timeout timeout : timeouts.subList(0, 3)) {
+            verify(timeout).cancel();
+        }
+        verify(timeouts.get(3), never()).cancel();
+        assertEquals(1, storage.getPendingEvictionCount());
+        verify(timer, times(4)).newTimeout(any(), eq(TTL_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testRoomWithUsersIsNotScheduled() {
+        final var room = joinedRoom("room");
+        final var second = storage.createUser(context(), "second", "pass");
+        room.addUser(second);
+        storage.addChatChannelToUser(second, room);
+        storage.removeUserFromChannels(second);
+        assertFalse(room.containsUser(second));
+        verify(timer, never()).newTimeout(any(), anyLong(), any());
+    }
+
+    @Test
+    void testUserChannelsKeepCurrentChannelFirst() {
+        final var user = storage.createUser(context(), "user", "pass");
+        final var a = new ChatChannel("a", 10);
+        final var b = new ChatChannel("b", 10);
+        final var c = new ChatChannel("c", 10);
+        for (final ChatChannel room : List.of(a, b, c)) {
+            storage.addChatChannel(room);
+            room.addUser(user);
+            storage.addChatChannelToUser(user, room);
+        }
+        assertEquals(List.of(c, b, a), storage.getUserChatChannels(user));
+
+        storage.addChatChannelToUser(user, a);
+        assertEquals(List.of(a, c, b), storage.getUserChatChannels(user));
+        assertSame(a, storage.getCurrentChatChannel(user));
+
+        storage.removeUserFromChannel(user, a);
+        assertFalse(a.containsUser(user));
+        assertEquals(List.of(c, b), storage.getUserChatChannels(user));
+        assertSame(c, storage.getCurrentChatChannel(user));
+
+        storage.removeUserFromChannels(user);
+        assertFalse(b.containsUser(user) || c.containsUser(user));
+        assertTrue(storage.anyChannelContainsUser(user));
+    }
+
+    @Test
+    void testEvictedChannelsAreDroppedFromUserChannels() throws Exception {
+        final var room = joinedRoom("room");
+        final var user = room.getUsers().iterator().next();
+        storage.removeUserFromChannels(user);
+        runEviction();
+        assertEquals(List.of(), storage.getUserChatChannels(user));
+
+        final var other = new ChatChannel("other", 10);
+        storage.addChatChannel(other);
+        storage.addChatChannelToUser(user, other);
+        assertEquals(List.of(other), storage.getUserChatChannels(user));
+    }
+
+    private ChatChannel joinedRoom(final String name, final String... messages) {
+        final var user = storage.createUser(context(), name + "-user", "pass");
+        final var room = new ChatChannel(name, 10);
+        room.addUser(user);
+        storage.addChatChannel(room);
+        storage.addChatChannelToUser(user, room);
+        for (final String message : messages) {
+            room.addMessage(message);
+        }
+        return room;
+    }
+
+    private void runEviction() throws Exception {
+        final var task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(TTL_MILLIS), eq(TimeUnit.MILLISECONDS));
+        clearInvocations(timer);
+        task.getValue().run(timeouts.get(timeouts.size() - 1));
+    }
+
+    private static ChannelHandlerContext context() {
+        return new EmbeddedChannel(new ChannelInboundHandlerAdapter()).pipeline().firstContext();
+    }
+}
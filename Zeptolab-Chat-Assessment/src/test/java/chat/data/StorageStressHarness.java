@@ -0,0 +1,320 @@
+package chat.data;
+
+import chat.handler.ChatHandler;
+import chat.model.ChatChannel;
+import chat.model.ChatChannelListener;
+import chat.model.User;
+import chat.service.ChatService;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import static chat.data.LocalStorage.LINE_SEPARATOR;
+
+/**
+ * Drives any {@link Storage} through {@link ChatHandler} from many worker threads at once, with interleaved
+ * login, join, leave, send, users and disconnect commands, and checks invariants while running and afterwards:
+ * <ul>
+ *     <li>a room never has more users than its capacity,</li>
+ *     <li>a user is never in two rooms,</li>
+ *     <li>every room name belongs to one listed room,</li>
+ *     <li>every message is added to history once, in the order it was broadcast, and delivered at most once
+ *     to every connection, including its sender's.</li>
+ * </ul>
+ * History is checked by room name, so that it also holds for storages that evict idle rooms and restore their
+ * history when they're joined again.
+ * Every worker owns its users, so commands of one user are sequential while rooms are shared by all workers.
+ * Outbound messages are consumed by a thread-safe handler in front of the chat handler, so broadcasts from
+ * other workers don't touch the outbound buffer of the embedded channels.
+ */
+public class StorageStressHarness {
+
+    public static final int ROOM_CAPACITY = 10;
+    private static final int HISTORY_SIZE = 10;
+
+    private final Storage storage;
+    private final int workers;
+    private final int usersPerWorker;
+    private final int rooms;
+    private final int operationsPerWorker;
+    private final long seed;
+    private final InvariantListener listener = new InvariantListener();
+    private final ChatService chatService = new ChatService(listener);
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+    private final LongAdder operations = new LongAdder();
+
+    /**
+     * @param storage             storage under test, empty
+     * @param workers             number of threads issuing commands
+     * @param usersPerWorker      users owned by every worker
+     * @param rooms               number of rooms users join, fewer than users over capacity to contend for them
+     * @param operationsPerWorker commands issued by every worker
+     */
+    public StorageStressHarness(final Storage storage, final int workers, final int usersPerWorker, final int rooms,
+                                final int operationsPerWorker, final long seed) {
+        this.storage = storage;
+        this.workers = workers;
+        this.usersPerWorker = usersPerWorker;
+        this.rooms = rooms;
+        this.operationsPerWorker = operationsPerWorker;
+        this.seed = seed;
+    }
+
+    public Result run() throws InterruptedException {
+        final var start = new CountDownLatch(1);
+        final var threads = new ArrayList<Thread>();
+        for (int w = 0; w < workers; w++) {
+            final var worker = w;
+            final var thread = new Thread(() -> {
+                try {
+                    start.await();
+                    work(worker);
+                } catch (Throwable e) {
+                    violations.add("Worker " + worker + " failed: " + e + " at "
+                            + Arrays.toString(Arrays.copyOf(e.getStackTrace(), Math.min(8, e.getStackTrace().length))));
+                }
+            }, "stress-worker-" + w);
+            thread.start();
+            threads.add(thread);
+        }
+        final var begin = System.nanoTime();
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final var nanos = System.nanoTime() - begin;
+        checkFinalState();
+        return new Result(operations.sum(), nanos, List.copyOf(violations));
+    }
+
+    private void work(final int worker) {
+        final var random = new Random(seed + worker);
+        final var clients = new Client[usersPerWorker];
+        for (int u = 0; u < usersPerWorker; u++) {
+            clients[u] = new Client("w" + worker + "u" + u);
+        }
+        var sequence = 0;
+        for (int i = 0; i < operationsPerWorker; i++) {
+            final var client = clients[random.nextInt(clients.length)];
+            if (client.connection == null) {
+                client.connect();
+                client.send("/login " + client.name + " pass");
+            } else {
+                final var dice = random.nextInt(100);
+                if (dice < 25) {
+                    client.send("/join room" + random.nextInt(rooms));
+                } else if (dice < 35) {
+                    client.send("/leave");
+                } else if (dice < 80) {
+                    client.sendMessage("m-" + client.name + "-" + sequence++);
+                } else if (dice < 90) {
+                    client.send("/users");
+                } else if (dice < 95) {
+                    client.send("/disconnect");
+                    client.connection = null;
+                } else {
+                    client.connection.close();
+                    client.connection = null;
+                }
+            }
+            operations.increment();
+        }
+        for (final Client client : clients) {
+            if (client.connection != null) {
+                client.connection.close();
+            }
+        }
+    }
+
+    private void checkFinalState() {
+        final var roomsOfUsers = new ConcurrentHashMap<User, ChatChannel>();
+        final var roomsByName = new ConcurrentHashMap<String, ChatChannel>();
+        for (final ChatChannel room : storage.getChatChannels()) {
+            final var sameName = roomsByName.put(room.getName(), room);
+            if (sameName != null) {
+                violations.add("Rooms " + sameName.getId() + " and " + room.getId() + " are both named " + room);
+            }
+            final var users = List.copyOf(room.getUsers());
+            if (users.size() > ROOM_CAPACITY) {
+                violations.add("Room " + room + " has " + users.size() + " users");
+            }
+            for (final User user : users) {
+                final var other = roomsOfUsers.put(user, room);
+                if (other != null) {
+                    violations.add("User " + user + " is in rooms " + other + " and " + room);
+                }
+            }
+            final var written = listener.history(room);
+            final var expected = written.subList(Math.max(0, written.size() - HISTORY_SIZE), written.size());
+            if (!room.getMessages().equals(expected)) {
+                violations.add("Room " + room + " has history " + room.getMessages() + " instead of " + expected);
+            }
+        }
+    }
+
+    /**
+     * Connection of a user, replaced on reconnect.
+     */
+    private final class Client {
+
+        private final String name;
+        private EmbeddedChannel connection;
+        private DeliverySink sink;
+
+        private Client(final String name) {
+            this.name = name;
+        }
+
+        private void connect() {
+            sink = new DeliverySink(name);
+            connection = new EmbeddedChannel(sink, new ChatHandler(chatService, storage));
+        }
+
+        private void send(final String line) {
+            connection.writeInbound(line);
+            try {
+                connection.checkException();
+            } catch (Throwable e) {
+                violations.add("User " + name + " failed on " + line + ": " + e);
+            }
+        }
+
+        /**
+         * Sends message and checks that it was echoed to the sender exactly when it was added to history.
+         */
+        private void sendMessage(final String text) {
+            send(text);
+            final var line = name + ": " + text;
+            final var written = listener.lines.contains(line);
+            final var echoed = sink.messages.contains(line);
+            if (written != echoed) {
+                violations.add("Message " + line
+                        + (written ? " was written but not echoed" : " was echoed but not written"));
+            }
+        }
+    }
+
+    /**
+     * Consumes everything written to a connection, from whatever thread, and records chat messages.
+     */
+    private final class DeliverySink extends ChannelOutboundHandlerAdapter {
+
+        private final String name;
+        private final Set<String> messages = ConcurrentHashMap.newKeySet();
+
+        private DeliverySink(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+            try {
+                // Broadcasts reach connections without a broadcast encoder as strings, while replies and history
+                // replayed on join, which may repeat messages, are buffers.
+                if (msg instanceof String text) {
+                    for (final String line : text.split(LINE_SEPARATOR)) {
+                        if (line.contains(": m-") && !messages.add(line)) {
+                            violations.add("Connection of " + name + " received " + line + " twice");
+                        }
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+            promise.trySuccess();
+        }
+
+        @Override
+        public void flush(final ChannelHandlerContext ctx) {
+        }
+    }
+
+    /**
+     * Checks membership invariants as they change, while the channel is locked, and records history.
+     */
+    private final class InvariantListener implements ChatChannelListener {
+
+        private final Map<User, ChatChannel> roomOfUser = new ConcurrentHashMap<>();
+        private final Map<String, List<String>> history = new ConcurrentHashMap<>();
+        private final Set<String> lines = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void userJoined(final ChatChannel channel, final User user) {
+            final var size = channel.getUsers().size();
+            if (size > ROOM_CAPACITY) {
+                violations.add("Room " + channel + " reached " + size + " users");
+            }
+            final var previous = roomOfUser.put(user, channel);
+            if (previous != null) {
+                violations.add("User " + user + " joined " + channel + " while in " + previous);
+            }
+        }
+
+        @Override
+        public void userLeft(final ChatChannel channel, final User user) {
+            if (!roomOfUser.remove(user, channel)) {
+                violations.add("User " + user + " left " + channel + " without being in it");
+            }
+        }
+
+        @Override
+        public void messageWritten(final ChatChannel channel, final User user, final String message,
+                                   final String line) {
+            if (!lines.add(line)) {
+                violations.add("Message " + line + " was written twice");
+            }
+            history.computeIfAbsent(channel.getName(), c -> new ArrayList<>()).add(line);
+        }
+
+        private List<String> history(final ChatChannel channel) {
+            return history.getOrDefault(channel.getName(), List.of());
+        }
+    }
+
+    public static final class Result {
+
+        private final long operations;
+        private final long nanos;
+        private final List<String> violations;
+
+        private Result(final long operations, final long nanos, final List<String> violations) {
+            this.operations = operations;
+            this.nanos = nanos;
+            this.violations = violations;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public double getOperationsPerSecond() {
+            return operations * 1e9 / nanos;
+        }
+
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d operations in %d ms, %.0f ops/s, %d violations", operations, nanos / 1_000_000,
+                    getOperationsPerSecond(), violations.size());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package chat.feed;
+
+import chat.model.ChatChannel;
+import chat.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomFeedTest {
+
+    // delivers on the publishing thread, so that tests see events right after they're published
+    private final RoomFeed feed = new RoomFeed(64, Runnable::run);
+    private final User john = new User(1, "john", "pass");
+
+    @Test
+    void testNoEventsAreCreatedWithoutSubscribers() {
+        final var idleFeed = new RoomFeed(64, task -> fail("nothing to deliver"));
+        final var room = new ChatChannel("room", 10, idleFeed);
+        room.addUser(john);
+        room.write(john, "hello");
+        assertEquals(0, idleFeed.getSubscriberCount());
+    }
+
+    @Test
+    void testAllRoomsPublisherReceivesEventsInOrder() {
+        final var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        feed.publisher().subscribe(subscriber);
+        final var room = new ChatChannel("room", 10, feed);
+        room.addUser(john);
+        room.write(john, "hello");
+        room.removeUser(john);
+
+        assertEquals(List.of("JOINED room john", "MESSAGE room john: hello", "LEFT room john"), subscriber.events());
+    }
+
+    @Test
+    void testRoomPublisherOnlyReceivesEventsOfItsRoom() {
+        final var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        feed.publisher("room").subscribe(subscriber);
+        final var room = new ChatChannel("room", 10, feed);
+        final var other = new ChatChannel("other", 10, feed);
+        room.addUser(john);
+        other.write(john, "elsewhere");
+        room.write(john, "here");
+
+        assertEquals(List.of("JOINED room john", "MESSAGE room john: here"), subscriber.events());
+    }
+
+    @Test
+    void testSlowSubscriberDropsEventsWithoutHoldingBackOthers() {
+        final var slow = new CollectingSubscriber(0);
+        final var fast = new CollectingSubscriber(Long.MAX_VALUE);
+        feed.publisher().subscribe(slow);
+        feed.publisher().subscribe(fast);
+        final var room = new ChatChannel("room", 10, feed);
+        for (int i = 0; i < 1_000; i++) {
+            room.write(john, "message " + i);
+        }
+
+        assertEquals(1_000, fast.events().size());
+        assertTrue(slow.events().isEmpty());
+        assertTrue(feed.getDroppedEvents() >= 1_000 - 64, "dropped " + feed.getDroppedEvents());
+        slow.subscription.request(1);
+        assertEquals(List.of("MESSAGE room john: message 0"), slow.events());
+    }
+
+    @Test
+    void testCancelledAndCompletedSubscribersAreNotCounted() {
+        final var cancelled = new CollectingSubscriber(Long.MAX_VALUE);
+        final var completed = new CollectingSubscriber(Long.MAX_VALUE);
+        feed.publisher("room").subscribe(cancelled);
+        feed.publisher().subscribe(completed);
+        assertEquals(2, feed.getSubscriberCount());
+
+        cancelled.subscription.cancel();
+        new ChatChannel("room", 10, feed).write(john, "hello");
+        assertEquals(1, feed.getSubscriberCount());
+        assertTrue(cancelled.events().isEmpty());
+
+        feed.close();
+        assertEquals(0, feed.getSubscriberCount());
+        assertTrue(completed.completed);
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<RoomEvent> {
+
+        private final long initialDemand;
+        private final List<RoomEvent> received = new CopyOnWriteArrayList<>();
+        private Flow.Subscription subscription;
+        private volatile boolean completed;
+
+        private CollectingSubscriber(final long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(final RoomEvent item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        private List<String> events() {
+            return received.stream().map(RoomEvent::toString).toList();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package chat.handler;
+
+import chat.data.LocalStorage;
+import chat.service.ChatService;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards bytes allocated per operation on the hot paths, measured on the test thread after JIT warm-up.
+ * Budgets are in bytes and can be overridden with {@code chat.allocationBudget.*} system properties.
+ */
+class AllocationBudgetTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    private static final long MESSAGE_BUDGET = budget("message", 600);
+    private static final long MESSAGE_PER_RECIPIENT_BUDGET = budget("messagePerRecipient", 64);
+    private static final long LOGIN_BUDGET = budget("login", 2_100);
+    private static final long JOIN_BUDGET = budget("join", 1_700);
+    private static final long USERS_BUDGET = budget("users", 320);
+    private static final long LIST_BUDGET = budget("list", 320);
+    private static final long ERROR_BUDGET = budget("error", 256);
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final LocalStorage storage = new LocalStorage();
+    private final ChatService chatService = new ChatService();
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, 10})
+    void messageStaysWithinBudget(final int roomSize) {
+        final var members = joinedClients("room", roomSize);
+        final var sender = members.get(0);
+        final var allocated = measure(() -> {
+            sender.writeInbound("hello everyone");
+            members.forEach(AllocationBudgetTest::drain);
+        });
+        assertWithinBudget(MESSAGE_BUDGET + MESSAGE_PER_RECIPIENT_BUDGET * roomSize, allocated);
+    }
+
+    @Test
+    void loginStaysWithinBudget() {
+        final var client = client();
+        client.writeInbound("/login name pass");
+        drain(client);
+        final var allocated = measure(() -> {
+            client.writeInbound("/login name pass");
+            drain(client);
+        });
+        assertWithinBudget(LOGIN_BUDGET, allocated);
+    }
+
+    @Test
+    void joinWithHistoryReplayStaysWithinBudget() {
+        final var client = joinedClients("room", 1).get(0);
+        for (int i = 0; i < 10; i++) {
+            client.writeInbound("history message " + i);
+        }
+        client.writeInbound("/join other");
+        drain(client);
+        final var allocated = measure(() -> {
+            client.writeInbound("/join room");
+            client.writeInbound("/join other");
+            drain(client);
+        }) / 2;
+        assertWithinBudget(JOIN_BUDGET, allocated);
+    }
+
+    @Test
+    void usersStaysWithinBudget() {
+        final var client = joinedClients("room", 10).get(0);
+        final var allocated = measure(() -> {
+            client.writeInbound("/users");
+            drain(client);
+        });
+        assertWithinBudget(USERS_BUDGET, allocated);
+    }
+
+    @Test
+    void listStaysWithinBudget() {
+        final var client = joinedClients("room", 1).get(0);
+        for (int i = 0; i < 100; i++) {
+            client.writeInbound("/join room" + i);
+        }
+        drain(client);
+        final var allocated = measure(() -> {
+            client.writeInbound("/list");
+            drain(client);
+        });
+        assertWithinBudget(LIST_BUDGET, allocated);
+    }
+
+    @Test
+    void constantErrorReplyStaysWithinBudget() {
+        final var client = client();
+        final var allocated = measure(() -> {
+            client.writeInbound("/leave");
+            drain(client);
+        });
+        assertWithinBudget(ERROR_BUDGET, allocated);
+    }
+
+    private EmbeddedChannel client() {
+        return new EmbeddedChannel(new ChatHandler(chatService, storage));
+    }
+
+    private List<EmbeddedChannel> joinedClients(final String room, final int count) {
+        final var clients = new ArrayList<EmbeddedChannel>();
+        for (int i = 0; i < count; i++) {
+            final var client = client();
+            client.writeInbound("/login " + room + "-user" + i + " pass");
+            client.writeInbound("/join " + room);
+            drain(client);
+            clients.add(client);
+        }
+        return clients;
+    }
+
+    private static void assertWithinBudget(final long budget, final long allocated) {
+        assertTrue(allocated <= budget,
+                String.format("Allocated %d bytes per operation, budget is %d bytes", allocated, budget));
+    }
+
+    private static long budget(final String operation, final long defaultBytes) {
+        return Long.getLong("chat.allocationBudget." + operation, defaultBytes);
+    }
+
+    private static void drain(final EmbeddedChannel channel) {
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * @return average bytes allocated by the current thread per run of the operation
+     */
+    private static long measure(final Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        final var threadId = Thread.currentThread().getId();
+        final var before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            operation.run();
+        }
+        return (THREADS.getThreadAllocatedBytes(threadId) - before) / MEASURED_ITERATIONS;
+    }
+}
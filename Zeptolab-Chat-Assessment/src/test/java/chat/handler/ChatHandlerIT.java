@@ -1,14 +1,18 @@
 package chat.handler;
 
+import chat.audit.AuditLog;
 import chat.data.LocalStorage;
+import chat.model.ChatChannelListener;
 import chat.server.ChatServerInitializer;
 import chat.service.ChatService;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.CharsetUtil;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -47,7 +51,7 @@ class ChatHandlerIT {
     void testRegisterNewUser() throws Exception {
         final var clientChannel = new EmbeddedChannel(new ChatHandler(new ChatService(), new LocalStorage()));
         clientChannel.writeInbound("/login name pass");
-        final var loginResponse = clientChannel.readOutbound();
+        final var loginResponse = readOutboundBuffer(clientChannel);
         assertEquals(String.format("%s%s", "Welcome name.", System.lineSeparator()), loginResponse);
         clientChannel.close().sync();
     }
@@ -58,7 +62,7 @@ class ChatHandlerIT {
         clientChannel.writeInbound("/login name pass");
         clientChannel.readOutbound();
         clientChannel.writeInbound("/join test");
-        final var loginResponse = clientChannel.readOutbound();
+        final var loginResponse = readOutboundBuffer(clientChannel);
         assertEquals(String.format("%s%s", "New channel test has been created.",
                 System.lineSeparator()), loginResponse);
         clientChannel.close().sync();
@@ -78,7 +82,7 @@ class ChatHandlerIT {
         clientChannel.writeInbound("/login 11 pass");
         clientChannel.readOutbound();
         clientChannel.writeInbound("/join test");
-        final var loginResponse = clientChannel.readOutbound();
+        final var loginResponse = readOutboundBuffer(clientChannel);
         assertEquals(String.format("%s%s", "The channel you've tried to connect is at max capacity.",
                 System.lineSeparator()), loginResponse);
         channels.forEach(ch -> {
@@ -104,7 +108,7 @@ class ChatHandlerIT {
         clientChannel.writeInbound("/login 11 pass");
         clientChannel.readOutbound();
         clientChannel.writeInbound("/join test");
-        final var loginResponse = clientChannel.readOutbound();
+        final var loginResponse = readOutboundBuffer(clientChannel);
         assertEquals(String.format("%s%s", "You've joined channel test.", System.lineSeparator()), loginResponse);
         clientChannel.close().sync();
     }
@@ -119,7 +123,7 @@ class ChatHandlerIT {
         final var newClientChannel = new EmbeddedChannel(new ChatHandler(new ChatService(), storage));
         newClientChannel.writeInbound("/login name pass");
         newClientChannel.readOutbound();
-        final var loginResponse = newClientChannel.readOutbound();
+        final var loginResponse = readOutboundBuffer(newClientChannel);
         assertEquals(String.format("%s%s", "You've joined channel test.", System.lineSeparator()), loginResponse);
         newClientChannel.close().sync();
     }
@@ -168,13 +172,30 @@ class ChatHandlerIT {
         clientChannel.readOutbound();
         clientChannel.readOutbound();
         clientChannel.writeInbound("/list");
-        final var expected = List.of(String.format("%s%s", "ch1", System.lineSeparator()),
-                String.format("%s%s", "ch2", System.lineSeparator()),
-                String.format("%s%s", "ch3", System.lineSeparator()));
-        final List<String> actual = List.of(clientChannel.readOutbound(),
-                clientChannel.readOutbound(),
-                clientChannel.readOutbound());
-        assertTrue(expected.containsAll(actual));
+        final var expected = String.format("ch1%1$sch2%1$sch3%1$s", System.lineSeparator());
+        assertEquals(expected, readOutboundBuffer(clientChannel));
+        clientChannel.close().sync();
+    }
+
+    @Test
+    void testListIsPaginatedAndFilteredByPrefix() throws Exception {
+        final var clientChannel = new EmbeddedChannel(new ChatHandler(new ChatService(), new LocalStorage()));
+        clientChannel.writeInbound("/login name pass");
+        clientChannel.readOutbound();
+        for (int i = 0; i < ChatService.CHANNEL_LIST_PAGE_SIZE + 2; i++) {
+            clientChannel.writeInbound(String.format("/join a%03d", i));
+            clientChannel.readOutbound();
+            clientChannel.readOutbound();
+        }
+        clientChannel.writeInbound("/join b");
+        clientChannel.readOutbound();
+        clientChannel.readOutbound();
+        clientChannel.writeInbound("/list 2 a");
+        final var expected = String.format("a%03d%s", ChatService.CHANNEL_LIST_PAGE_SIZE, System.lineSeparator())
+                + String.format("a%03d%s", ChatService.CHANNEL_LIST_PAGE_SIZE + 1, System.lineSeparator());
+        assertEquals(expected, readOutboundBuffer(clientChannel));
+        clientChannel.writeInbound("/list 1 b");
+        assertEquals(String.format("b%s", System.lineSeparator()), readOutboundBuffer(clientChannel));
         clientChannel.close().sync();
     }
 
@@ -283,11 +304,11 @@ class ChatHandlerIT {
         clientChannel2.readOutbound();
         assertAll(
                 () -> assertEquals(String.format("%s%s", "name: 1", System.lineSeparator()),
-                        clientChannel2.readOutbound()),
+                        readOutboundBuffer(clientChannel2)),
                 () -> assertEquals(String.format("%s%s", "name: 2", System.lineSeparator()),
-                        clientChannel2.readOutbound()),
+                        readOutboundBuffer(clientChannel2)),
                 () -> assertEquals(String.format("%s%s", "name: 3", System.lineSeparator()),
-                        clientChannel2.readOutbound()));
+                        readOutboundBuffer(clientChannel2)));
         clientChannel.close().sync();
         clientChannel2.close().sync();
     }
@@ -307,15 +328,172 @@ class ChatHandlerIT {
         clientChannel3.readOutbound();
         clientChannel3.readOutbound();
         clientChannel3.writeInbound("/users");
-        final var expected = List.of(String.format("%s%s", "name", System.lineSeparator()),
-                String.format("%s%s", "name2", System.lineSeparator()),
-                String.format("%s%s", "name3", System.lineSeparator()));
-        final List<String> actual = List.of(clientChannel3.readOutbound(),
-                clientChannel3.readOutbound(),
-                clientChannel3.readOutbound());
-        assertTrue(expected.containsAll(actual));
+        final var expected = List.of("name", "name2", "name3");
+        final var actual = List.of(readOutboundBuffer(clientChannel3).split(System.lineSeparator()));
+        assertAll(() -> assertEquals(expected.size(), actual.size()),
+                () -> assertTrue(expected.containsAll(actual)));
+        clientChannel.close().sync();
+        clientChannel2.close().sync();
+        clientChannel3.close().sync();
+    }
+
+    @Test
+    void testUserInSeveralChannelsSendsToCurrentOneAndReceivesTaggedLines() throws Exception {
+        final var storage = new LocalStorage();
+        final var chatService = new ChatService(ChatChannelListener.NONE, AuditLog.NONE, 3);
+        final var clientChannel = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        final var clientChannel2 = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel.writeInbound("/login name pass");
+        clientChannel.writeInbound("/join a");
+        clientChannel.writeInbound("/join b");
+        clientChannel2.writeInbound("/login name2 pass");
+        clientChannel2.writeInbound("/join a");
+        clientChannel2.writeInbound("/join b");
+        clientChannel2.writeInbound("from b");
+        clientChannel2.writeInbound("/target a");
+        clientChannel2.writeInbound("from a");
+        drainOutbound(clientChannel2);
+        assertEquals(List.of(
+                "Welcome name.",
+                "New channel a has been created.",
+                "You've joined channel a.",
+                "New channel b has been created.",
+                "You've joined channel b.",
+                "[b] name2: from b",
+                "[a] name2: from a"), drainOutbound(clientChannel));
+
+        clientChannel.writeInbound("/join c");
+        clientChannel.writeInbound("/join d");
+        clientChannel.writeInbound("/leave b");
+        clientChannel.writeInbound("/target b");
+        clientChannel.writeInbound("/leave");
+        clientChannel.writeInbound("to a");
+        assertEquals(List.of(
+                "New channel c has been created.",
+                "You've joined channel c.",
+                "New channel d has been created.",
+                "ERROR: You can't join more than 3 channels.",
+                "You've not joined channel b.",
+                "[a] name: to a"), drainOutbound(clientChannel).stream()
+                .filter(line -> !line.startsWith("[b]")).toList());
+        assertEquals(List.of(
+                "[b] User name has left the channel.",
+                "[a] name: to a"), drainOutbound(clientChannel2));
+        clientChannel.close().sync();
+        clientChannel2.close().sync();
+    }
+
+    @Test
+    void testUserInSeveralChannelsRejoinsThemAfterClientClose() throws Exception {
+        final var storage = new LocalStorage();
+        final var chatService = new ChatService(ChatChannelListener.NONE, AuditLog.NONE, 3);
+        final var clientChannel = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel.writeInbound("/login name pass");
+        clientChannel.writeInbound("/join a");
+        clientChannel.writeInbound("/join b");
+        clientChannel.writeInbound("/target a");
+        clientChannel.close().sync();
+
+        final var clientChannel2 = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel2.writeInbound("/login name pass");
+        clientChannel2.writeInbound("hello");
+        assertEquals(List.of(
+                "You've logged in as name.",
+                "You've joined channel b.",
+                "You've joined channel a.",
+                "[a] name: hello"), drainOutbound(clientChannel2));
+        clientChannel2.close().sync();
+    }
+
+    @Test
+    void testReconnectingUserOnlyReceivesMessagesAfterSeenSequence() throws Exception {
+        final var storage = new LocalStorage();
+        final var chatService = new ChatService(ChatChannelListener.NONE, AuditLog.NONE, 1, true);
+        final var clientChannel = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel.writeInbound("/login name pass");
+        clientChannel.writeInbound("/join test");
+        clientChannel.writeInbound("1");
+        clientChannel.writeInbound("2");
+        assertEquals(List.of(
+                "Welcome name.",
+                "New channel test has been created.",
+                "You've joined channel test.",
+                "#1 name: 1",
+                "#2 name: 2"), drainOutbound(clientChannel));
         clientChannel.close().sync();
+
+        final var clientChannel2 = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel2.writeInbound("/login name2 pass");
+        clientChannel2.writeInbound("/join test");
+        clientChannel2.writeInbound("3");
+        clientChannel2.writeInbound("4");
+        final var clientChannel3 = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel3.writeInbound("/login name pass 2");
+        assertEquals(List.of(
+                "You've logged in as name.",
+                "You've joined channel test.",
+                "#3 name2: 3",
+                "#4 name2: 4"), drainOutbound(clientChannel3));
+
+        clientChannel3.writeInbound("/join test 4");
+        assertEquals(List.of("You've joined channel test."), drainOutbound(clientChannel3));
         clientChannel2.close().sync();
         clientChannel3.close().sync();
     }
+
+    @Test
+    void testUserIsToldAboutMessagesNoLongerKept() throws Exception {
+        final var storage = new LocalStorage();
+        final var chatService = new ChatService(ChatChannelListener.NONE, AuditLog.NONE, 1, true);
+        final var clientChannel = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel.writeInbound("/login name pass");
+        clientChannel.writeInbound("/join test");
+        for (int i = 1; i <= 12; i++) {
+            clientChannel.writeInbound(String.valueOf(i));
+        }
+        drainOutbound(clientChannel);
+
+        final var clientChannel2 = new EmbeddedChannel(new ChatHandler(chatService, storage));
+        clientChannel2.writeInbound("/login name2 pass");
+        clientChannel2.writeInbound("/join test 1");
+        final var lines = drainOutbound(clientChannel2);
+        assertEquals(List.of("Welcome name2.", "You've joined channel test.", "/gap test 3", "#3 name: 3"),
+                lines.subList(0, 4));
+        assertEquals("#12 name: 12", lines.get(lines.size() - 1));
+
+        clientChannel2.writeInbound("/join test 99");
+        assertEquals(List.of("You've joined channel test.", "/gap test 3"), drainOutbound(clientChannel2).subList(0, 2));
+        clientChannel2.writeInbound("/join test x");
+        assertEquals(List.of("ERROR: Invalid arguments."), drainOutbound(clientChannel2));
+        clientChannel.close().sync();
+        clientChannel2.close().sync();
+    }
+
+    /**
+     * Reads all lines written to the client so far.
+     */
+    private static List<String> drainOutbound(final EmbeddedChannel channel) {
+        final var lines = new ArrayList<String>();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            final String text;
+            if (message instanceof ByteBuf buffer) {
+                text = buffer.toString(CharsetUtil.UTF_8);
+                buffer.release();
+            } else {
+                text = message.toString();
+            }
+            lines.addAll(List.of(text.split(System.lineSeparator())));
+        }
+        return lines;
+    }
+
+    private static String readOutboundBuffer(final EmbeddedChannel channel) {
+        final ByteBuf buffer = channel.readOutbound();
+        try {
+            return buffer.toString(CharsetUtil.UTF_8);
+        } finally {
+            buffer.release();
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package chat.jfr;
+
+import chat.audit.AsyncAuditLog;
+import chat.audit.OverflowPolicy;
+import chat.data.AsyncStorage;
+import chat.data.LocalStorage;
+import chat.handler.ChatHandler;
+import chat.model.ChatChannelListener;
+import chat.service.ChatService;
+import io.netty.channel.embedded.EmbeddedChannel;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatEventsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEventsAreEmittedWithTheirFields() throws Exception {
+        final var auditLog = new AsyncAuditLog(directory, 1 << 20, false, 16, OverflowPolicy.BLOCK, 1_000);
+        final var storage = new RecordingAsyncStorage(AsyncStorage.completed(new LocalStorage()));
+        final var chatService = new ChatService(ChatChannelListener.NONE, auditLog);
+        final List<RecordedEvent> events;
+        try (final var recording = new Recording()) {
+            for (final Class<? extends jdk.jfr.Event> type : List.of(CommandEvent.class, BroadcastEvent.class,
+                    HistoryReplayEvent.class, StorageEvent.class)) {
+                recording.enable(type).withThreshold(Duration.ZERO);
+            }
+            // emitted when the recording stops, instead of waiting for the period
+            recording.enable(AuditLogEvent.class).with("period", "endChunk");
+            recording.start();
+            auditLog.start();
+            final var client = new EmbeddedChannel(new ChatHandler(chatService, storage));
+            client.writeInbound("/login john pass");
+            client.writeInbound("/join room");
+            client.writeInbound("hello");
+            client.writeInbound("/join other");
+            client.writeInbound("/join room");
+            awaitWritten(auditLog);
+            recording.stop();
+            auditLog.close();
+            final var file = directory.resolve("chat.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        assertAll(
+                () -> assertEvent(events, "chat.Command",
+                        e -> e.getString("command").equals("/join") && "room".equals(e.getString("channel"))),
+                () -> assertEvent(events, "chat.Command",
+                        e -> e.getString("command").equals("message") && e.getString("channel") == null),
+                () -> assertEvent(events, "chat.Broadcast", e -> e.getString("channel").equals("room")
+                        && e.getInt("recipients") == 1 && e.getLong("bytesWritten") > 0),
+                () -> assertEvent(events, "chat.HistoryReplay", e -> e.getString("channel").equals("room")
+                        && e.getInt("messages") == 1 && e.getLong("bytesWritten") > 0 && !e.getBoolean("resumed")),
+                () -> assertEvent(events, "chat.Storage",
+                        e -> e.getString("operation").equals("getOrAddChatChannel") && !e.getBoolean("failed")),
+                () -> assertEvent(events, "chat.AuditLog", e -> e.getLong("writtenEvents") > 0));
+    }
+
+    private static void awaitWritten(final AsyncAuditLog auditLog) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + 5_000;
+        while (auditLog.getWrittenEvents() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Audit log has written nothing");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertEvent(final List<RecordedEvent> events, final String name,
+                                    final Predicate<RecordedEvent> fields) {
+        final var recorded = events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+        assertFalse(recorded.isEmpty(), "No " + name + " event");
+        assertTrue(recorded.stream().anyMatch(fields), () -> name + " fields don't match: " + recorded);
+    }
+}
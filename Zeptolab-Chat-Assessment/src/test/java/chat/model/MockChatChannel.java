@@ -1,9 +1,11 @@
 package chat.model;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 public class MockChatChannel {
@@ -14,9 +16,14 @@ public class MockChatChannel {
 
     public MockChatChannel(final String name, final int capacity) {
         when(channel.getName()).thenReturn(name);
+        when(channel.tagged(any())).thenAnswer(e -> e.getArgument(0));
+        when(channel.numbered(anyLong(), any())).thenAnswer(e -> e.getArgument(1));
+        when(channel.getHistory()).thenReturn(new History(1, List.of(), false));
+        when(channel.getHistory(anyLong())).thenReturn(new History(1, List.of(), false));
         users = new HashSet<>();
         this.capacity = capacity;
         when(channel.getUsers()).thenAnswer(e -> users);
+        when(channel.containsUser(any())).thenAnswer(e -> users.contains(e.getArgument(0)));
         when(channel.addUser(any())).thenAnswer(e -> {
             if (users.size() < this.capacity) {
                 return users.add(e.getArgument(0));
@@ -4,20 +4,29 @@ import io.netty.channel.Channel;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
 public class MockUser {
 
+    private static final AtomicInteger ID_SEQUENCE = new AtomicInteger();
+
     public final User user = mock(User.class);
     private final Set<Channel> channels;
 
     public MockUser(final String username, final String password) {
+        when(user.getId()).thenReturn(ID_SEQUENCE.getAndIncrement());
         when(user.getUsername()).thenReturn(username);
         when(user.getPassword()).thenReturn(password);
         channels = new HashSet<>();
         when(user.getChannels()).thenReturn(channels);
+        when(user.hasChannels()).thenAnswer(e -> !channels.isEmpty());
+        doAnswer(e -> {
+            channels.forEach(ch -> ch.writeAndFlush(e.getArgument(0)));
+            return null;
+        }).when(user).writeAndFlush(any());
     }
 
     public MockUser addChannel(final Channel channel) {
@@ -0,0 +1,89 @@
+package chat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageIndexTest {
+
+    private final MessageIndex index = new MessageIndex(Long.MAX_VALUE, Runnable::run);
+
+    @Test
+    void whenAllTermsMatchMessagesAreFoundNewestFirst() {
+        index.add("name: Hello World");
+        index.add("name: hello there");
+        index.add("name2: world, hello!");
+        assertAll(() -> assertEquals(List.of("name2: world, hello!", "name: Hello World"),
+                        index.search("WORLD hello", 10)),
+                () -> assertEquals(List.of("name: hello there"), index.search("there", 10)),
+                () -> assertEquals(List.of(), index.search("missing", 10)));
+    }
+
+    @Test
+    void whenSegmentsAreSealedAndMergedAllMessagesAreStillFound() {
+        final var count = MessageIndex.SEGMENT_SIZE * 20 + 3;
+        for (int i = 0; i < count; i++) {
+            index.add("name: message " + i + (i % 2 == 0 ? " even" : " odd"));
+        }
+        final var found = index.search("message even", count);
+        assertAll(() -> assertEquals(count, index.size()),
+                () -> assertEquals(count / 2 + 1, found.size()),
+                () -> assertEquals("name: message " + (count - 1) + " even", found.get(0)),
+                () -> assertEquals("name: message 0 even", found.get(found.size() - 1)),
+                () -> assertEquals(List.of("name: message 700 even"), index.search("700", 10)));
+    }
+
+    @Test
+    void whenIndexIsOverLimitOldestSegmentsAreEvicted() {
+        final var limited = new MessageIndex(1, Runnable::run);
+        for (int i = 0; i < MessageIndex.SEGMENT_SIZE * 3; i++) {
+            limited.add("name: message " + i);
+        }
+        assertAll(() -> assertEquals(MessageIndex.SEGMENT_SIZE * 2, limited.getEvictedMessages()),
+                () -> assertEquals(List.of(), limited.search("message 0", 10)),
+                () -> assertEquals(1, limited.search("message " + (MessageIndex.SEGMENT_SIZE * 3 - 1), 10).size()));
+    }
+
+    @Test
+    void whenSharedBudgetIsExceededLargestIndexIsEvictedFirst() {
+        final var budget = new IndexBudget(Long.MAX_VALUE);
+        final var large = new MessageIndex(Long.MAX_VALUE, Runnable::run, budget);
+        final var small = new MessageIndex(Long.MAX_VALUE, Runnable::run, budget);
+        for (int i = 0; i < MessageIndex.SEGMENT_SIZE * 6; i++) {
+            large.add("name: message " + i);
+        }
+        for (int i = 0; i < MessageIndex.SEGMENT_SIZE; i++) {
+            small.add("name: message " + i);
+        }
+        final var smallBytes = small.sizeInBytes();
+        budget.setMaxBytes(budget.getUsedBytes() - 1);
+
+        for (int i = 0; i < MessageIndex.SEGMENT_SIZE; i++) {
+            small.add("name: more " + i);
+        }
+
+        assertAll(() -> assertTrue(budget.getUsedBytes() <= budget.getMaxBytes()),
+                () -> assertTrue(large.getEvictedMessages() > 0),
+                () -> assertEquals(0, small.getEvictedMessages()),
+                () -> assertTrue(small.sizeInBytes() > smallBytes));
+    }
+
+    @Test
+    void whenIndexIsReleasedItsBytesAreReturnedToBudget() {
+        final var budget = new IndexBudget(Long.MAX_VALUE);
+        final var released = new MessageIndex(Long.MAX_VALUE, Runnable::run, budget);
+        for (int i = 0; i < MessageIndex.SEGMENT_SIZE * 2; i++) {
+            released.add("name: message " + i);
+        }
+        assertTrue(budget.getUsedBytes() > 0);
+
+        released.release();
+        released.add("name: after release");
+
+        assertAll(() -> assertEquals(0, budget.getUsedBytes()),
+                () -> assertEquals(0, budget.getIndexCount()),
+                () -> assertEquals(List.of(), released.search("message", 10)));
+    }
+}
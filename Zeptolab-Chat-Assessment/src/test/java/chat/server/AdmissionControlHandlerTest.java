@@ -0,0 +1,66 @@
+package chat.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlHandlerTest {
+
+    @Test
+    void whenMaxConnectionsIsReachedNewConnectionsAreRefused() {
+        final var handler = new AdmissionControlHandler(2, 10, 1_000);
+        final var server = new EmbeddedChannel(handler);
+        final var first = accept(server);
+        final var second = accept(server);
+        final var third = accept(server);
+        assertAll(() -> assertTrue(first.isOpen()),
+                () -> assertTrue(second.isOpen()),
+                () -> assertFalse(third.isOpen()),
+                () -> assertEquals(2, handler.getActiveConnections()),
+                () -> assertEquals(1, handler.getRejectedByCapacity()));
+    }
+
+    @Test
+    void whenConnectionIsClosedItsSlotIsReleased() throws Exception {
+        final var handler = new AdmissionControlHandler(1, 1, 1_000);
+        final var server = new EmbeddedChannel(handler);
+        accept(server).close().sync();
+        final var second = accept(server);
+        assertAll(() -> assertTrue(second.isOpen()),
+                () -> assertEquals(1, handler.getActiveConnections()),
+                () -> assertEquals(2, handler.getAcceptedConnections()));
+    }
+
+    @Test
+    void whenAddressLimitIsReachedConnectionsFromItAreRefused() {
+        final var handler = new AdmissionControlHandler(10, 1, 1_000);
+        final var server = new EmbeddedChannel(handler);
+        final var first = accept(server);
+        final var second = accept(server);
+        assertAll(() -> assertTrue(first.isOpen()),
+                () -> assertFalse(second.isOpen()),
+                () -> assertEquals(1, handler.getRejectedByAddress()));
+    }
+
+    @Test
+    void whenAcceptRateIsExceededConnectionIsRefusedAndAcceptingIsPaused() {
+        final var handler = new AdmissionControlHandler(10, 10, 1);
+        final var server = new EmbeddedChannel(handler);
+        final var first = accept(server);
+        final var second = accept(server);
+        assertAll(() -> assertTrue(first.isOpen()),
+                () -> assertFalse(second.isOpen()),
+                () -> assertEquals(1, handler.getRejectedByRate()),
+                () -> assertFalse(server.config().isAutoRead()));
+    }
+
+    private static Channel accept(final EmbeddedChannel server) {
+        final var child = new EmbeddedChannel();
+        server.writeInbound(child);
+        final Channel accepted = server.readInbound();
+        assertTrue(accepted == null || accepted == child);
+        return child;
+    }
+}
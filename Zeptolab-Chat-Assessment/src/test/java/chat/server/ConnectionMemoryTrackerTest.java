@@ -0,0 +1,34 @@
+package chat.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionMemoryTrackerTest {
+
+    private final ConnectionMemoryTracker tracker = new ConnectionMemoryTracker(100);
+
+    @Test
+    void whenLimitIsExceededConnectionBufferingMostIsClosed() {
+        final var large = new EmbeddedChannel();
+        final var small = new EmbeddedChannel();
+        tracker.addOutbound(large, 60);
+        tracker.addInbound(large, 30);
+        tracker.addOutbound(small, 20);
+        assertAll(() -> assertFalse(large.isOpen()),
+                () -> assertTrue(small.isOpen()),
+                () -> assertEquals(1, tracker.getEvictedConnections()));
+    }
+
+    @Test
+    void whenConnectionShrinksTotalFollows() {
+        final var channel = new EmbeddedChannel();
+        tracker.addOutbound(channel, 80);
+        tracker.addOutbound(channel, -80);
+        tracker.addInbound(channel, 50);
+        assertAll(() -> assertTrue(channel.isOpen()),
+                () -> assertEquals(50, tracker.getTotalBytes()),
+                () -> assertEquals(0, tracker.getEvictedConnections()));
+    }
+}
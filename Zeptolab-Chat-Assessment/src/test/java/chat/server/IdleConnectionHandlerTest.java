@@ -0,0 +1,44 @@
+package chat.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdleConnectionHandlerTest {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Test
+    void whenReaderIsIdleConnectionIsPingedAndThenEvicted() {
+        final var handler = new IdleConnectionHandler(true);
+        final var channel = new EmbeddedChannel(handler);
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        assertAll(() -> assertEquals(IdleConnectionHandler.PING + LINE_SEPARATOR, channel.readOutbound()),
+                () -> assertTrue(channel.isOpen()));
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        assertAll(() -> assertFalse(channel.isOpen()),
+                () -> assertEquals(1, handler.getEvictedConnections()));
+    }
+
+    @Test
+    void whenPongIsReceivedConnectionIsPingedAgainAndPongIsConsumed() {
+        final var channel = new EmbeddedChannel(new IdleConnectionHandler(true));
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        channel.readOutbound();
+        channel.writeInbound(IdleConnectionHandler.PONG);
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        assertAll(() -> assertNull(channel.readInbound()),
+                () -> assertEquals(IdleConnectionHandler.PING + LINE_SEPARATOR, channel.readOutbound()),
+                () -> assertTrue(channel.isOpen()));
+    }
+
+    @Test
+    void whenPingIsDisabledIdleConnectionIsEvictedRightAway() {
+        final var channel = new EmbeddedChannel(new IdleConnectionHandler(false));
+        channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        assertAll(() -> assertNull(channel.readOutbound()),
+                () -> assertFalse(channel.isOpen()));
+    }
+}
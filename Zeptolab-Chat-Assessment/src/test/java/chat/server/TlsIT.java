@@ -0,0 +1,222 @@
+package chat.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TlsIT {
+
+    private ChatServer server;
+    private SSLContext clientContext;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var config = new ChatServerConfig();
+        config.setPort(0);
+        config.setTlsCertificateFile(resource("tls/server.crt"));
+        config.setTlsKeyFile(resource("tls/server.key"));
+        server = new ChatServer(config);
+        server.start();
+        clientContext = clientContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testLoginOverTls() throws Exception {
+        try (final var socket = tlsSocket()) {
+            assertEquals("Welcome name.", roundTrip(socket, "/login name pass"));
+        }
+    }
+
+    @Test
+    void testPlaintextClientIsRefused() throws Exception {
+        try (final var socket = new Socket("127.0.0.1", server.getBoundPort())) {
+            socket.setSoTimeout(5_000);
+            final var reader = reader(socket);
+            socket.getOutputStream().write("/login name pass\n".getBytes(StandardCharsets.UTF_8));
+            try {
+                assertNull(reader.readLine());
+            } catch (IOException e) {
+                // Connection reset.
+            }
+        }
+    }
+
+    /**
+     * TLS 1.2 keeps the session id on resumption from the server session cache, unlike TLS 1.3 tickets.
+     */
+    @Test
+    void testReconnectResumesCachedSession() throws Exception {
+        final byte[] sessionId;
+        try (final var socket = tls12Socket()) {
+            sessionId = socket.getSession().getId();
+            roundTrip(socket, "/login name pass");
+        }
+        try (final var socket = tls12Socket()) {
+            assertArrayEquals(sessionId, socket.getSession().getId());
+        }
+    }
+
+    /**
+     * Compares handshake rate and message round trip time of plaintext, full TLS and resumed TLS connections.
+     * Sizes can be raised with {@code chat.tlsBenchmark.*} system properties for a longer run.
+     */
+    @Test
+    void compareHandshakeRateAndMessageOverhead() throws Exception {
+        final var connections = Integer.getInteger("chat.tlsBenchmark.connections", 200);
+        final var messages = Integer.getInteger("chat.tlsBenchmark.messages", 2_000);
+        final var plainServer = new ChatServer(plaintextConfig());
+        plainServer.start();
+        try {
+            final var plainPort = plainServer.getBoundPort();
+            // Warm up every path before measuring.
+            connect(connections / 4, () -> plainSocket(plainPort));
+            connect(connections / 4, this::fullHandshakeSocket);
+            connect(connections / 4, this::tlsSocket);
+
+            final var plainRate = connect(connections, () -> plainSocket(plainPort));
+            final var fullRate = connect(connections, this::fullHandshakeSocket);
+            final var resumedRate = connect(connections, this::tlsSocket);
+            System.out.printf("Connections with login per second: plaintext %.0f, TLS full handshake %.0f, "
+                    + "TLS resumed %.0f%n", plainRate, fullRate, resumedRate);
+
+            final double plainMicros;
+            final double tlsMicros;
+            try (final var plain = plainSocket(plainPort); final var tls = tlsSocket()) {
+                messageMicros(plain, "plainWarmup", messages / 4);
+                messageMicros(tls, "tlsWarmup", messages / 4);
+                plainMicros = messageMicros(plain, "plain", messages);
+                tlsMicros = messageMicros(tls, "tls", messages);
+            }
+            System.out.printf("Message round trip: plaintext %.1f us, TLS %.1f us, overhead %.1f us per message%n",
+                    plainMicros, tlsMicros, tlsMicros - plainMicros);
+        } finally {
+            plainServer.stop();
+        }
+    }
+
+    /**
+     * @return connections per second, each opened, logged in and closed
+     */
+    private static double connect(final int count, final SocketFactory factory) throws Exception {
+        final var start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            try (final var socket = factory.open()) {
+                assertTrue(roundTrip(socket, "/login user" + i + " pass").endsWith(" user" + i + "."));
+            }
+        }
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+
+    /**
+     * @return microseconds for a message to come back to its sender through the channel broadcast
+     */
+    private static double messageMicros(final Socket socket, final String name, final int count) throws Exception {
+        roundTrip(socket, "/login " + name + " pass");
+        var joined = roundTrip(socket, "/join " + name);
+        while (!joined.startsWith("You've joined")) {
+            joined = readLine(socket);
+        }
+        final var start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            assertEquals(name + ": message " + i, roundTrip(socket, "message " + i));
+        }
+        return (System.nanoTime() - start) / 1e3 / count;
+    }
+
+    private static String roundTrip(final Socket socket, final String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+        return readLine(socket);
+    }
+
+    /**
+     * Reads a line without buffering past it, so the socket can be reused for the next round trip.
+     */
+    private static String readLine(final Socket socket) throws IOException {
+        final var in = socket.getInputStream();
+        final var line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static Socket plainSocket(final int port) throws IOException {
+        final var socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private SSLSocket tlsSocket() throws IOException {
+        final var socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", server.getBoundPort());
+        socket.setTcpNoDelay(true);
+        socket.startHandshake();
+        return socket;
+    }
+
+    private SSLSocket tls12Socket() throws IOException {
+        final var socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", server.getBoundPort());
+        socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+        socket.startHandshake();
+        return socket;
+    }
+
+    private SSLSocket fullHandshakeSocket() throws IOException {
+        final var socket = tlsSocket();
+        socket.getSession().invalidate();
+        return socket;
+    }
+
+    private ChatServerConfig plaintextConfig() {
+        final var config = new ChatServerConfig();
+        config.setPort(0);
+        return config;
+    }
+
+    private static BufferedReader reader(final Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        final var trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        try (final var in = TlsIT.class.getResourceAsStream("/tls/server.crt")) {
+            trustStore.setCertificateEntry("server", CertificateFactory.getInstance("X.509").generateCertificate(in));
+        }
+        final var trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trustStore);
+        final var context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static String resource(final String name) throws Exception {
+        return Path.of(TlsIT.class.getResource("/" + name).toURI()).toString();
+    }
+
+    private interface SocketFactory {
+        Socket open() throws IOException;
+    }
+}
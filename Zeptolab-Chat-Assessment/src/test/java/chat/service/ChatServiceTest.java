@@ -1,13 +1,25 @@
 package chat.service;
 
 import chat.ChatServerTestBase;
+import chat.audit.AuditLog;
+import chat.data.AsyncStorage;
+import chat.model.ChatChannel;
+import chat.model.ChatChannelListener;
+import chat.model.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.Attribute;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.util.concurrent.CompletableFuture;
+
 import static chat.data.LocalStorage.USER_KEY;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -21,32 +33,33 @@ public class ChatServiceTest extends ChatServerTestBase {
 
     {
         when(ctx.channel()).thenReturn(channel);
+        when(ctx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
     }
 
     @Test
     void whenLoginIsCalledAnNoArgumentsMissingArgumentsMessageIsShown() {
-        cs.handleLogin(ctx, storage, null);
-        verify(ctx, times(1)).writeAndFlush(String.format("ERROR: Missing arguments.%s", LINE_SEPARATOR));
+        cs.handleLogin(ctx, asyncStorage, null);
+        verify(ctx, times(1)).writeAndFlush(response("ERROR: Missing arguments.%s", LINE_SEPARATOR));
     }
 
     @ParameterizedTest
     @CsvSource({"name pass wrong", "onlyName"})
     void whenArgumentsLengthIsNot2InvalidArgumentsMessageIsShown(final String params) {
-        cs.handleLogin(ctx, storage, params);
-        verify(ctx, times(1)).writeAndFlush(String.format("ERROR: Invalid arguments.%s", LINE_SEPARATOR));
+        cs.handleLogin(ctx, asyncStorage, params);
+        verify(ctx, times(1)).writeAndFlush(response("ERROR: Invalid arguments.%s", LINE_SEPARATOR));
     }
 
     @Test
     void whenUserDoesNotExistItIsCreated() {
-        cs.handleLogin(ctx, storage, "name pass");
+        cs.handleLogin(ctx, asyncStorage, "name pass");
         verify(storage, times(1)).createUser(ctx, "name", "pass");
     }
 
     @Test
     void whenUserExistsButPasswordIsWrongErrorMessageIsShown() {
         mockUser("name", "pass");
-        cs.handleLogin(ctx, storage, "name wrongpass");
-        verify(ctx, times(1)).writeAndFlush(String.format("ERROR: Wrong password.%s", LINE_SEPARATOR));
+        cs.handleLogin(ctx, asyncStorage, "name wrongpass");
+        verify(ctx, times(1)).writeAndFlush(response("ERROR: Wrong password.%s", LINE_SEPARATOR));
     }
 
     @Test
@@ -56,10 +69,10 @@ public class ChatServiceTest extends ChatServerTestBase {
         final var user = mockUser(userName, "pass").user;
         final var attr = mock(Attribute.class);
         when(channel.attr(USER_KEY)).thenReturn(attr);
-        cs.handleLogin(ctx, storage, "name pass");
+        cs.handleLogin(ctx, asyncStorage, "name pass");
         assertAll(() -> verify(attr).set(user),
                 () -> verify(storage).loginUser(channel, user),
-                () -> verify(ctx).writeAndFlush(String.format("You've logged in as %s.%s", userName, LINE_SEPARATOR)));
+                () -> verify(ctx).writeAndFlush(response("You've logged in as %s.%s", userName, LINE_SEPARATOR)));
     }
 
     @Test
@@ -71,23 +84,30 @@ public class ChatServiceTest extends ChatServerTestBase {
     @Test
     void whenUserIsNullLoggedInIsFalseAndErrorMessageIsShown() {
         assertAll(() -> assertTrue(cs.loginRequired(ctx, null)),
-                () -> verify(ctx).writeAndFlush(String.format("ERROR: Please login to system first.%s", LINE_SEPARATOR)));
+                () -> verify(ctx).writeAndFlush(response("ERROR: Please login to system first.%s", LINE_SEPARATOR)));
     }
 
     @Test
     void whenNoArgumentOnHandleJoinErrorIsThrown() {
         final var user = mockUser("name", "pass").user;
-        cs.handleJoin(ctx, storage, user, null);
-        verify(ctx).writeAndFlush(String.format("ERROR: Please input channel name.%s", LINE_SEPARATOR));
+        cs.handleJoin(ctx, asyncStorage, user, null);
+        verify(ctx).writeAndFlush(response("ERROR: Please input channel name.%s", LINE_SEPARATOR));
+    }
+
+    @Test
+    void whenUserIsNotLoggedInJoinDoesNotCreateChannel() {
+        cs.handleJoin(ctx, asyncStorage, null, "channel");
+        assertAll(() -> verify(ctx).writeAndFlush(response("ERROR: Please login to system first.%s", LINE_SEPARATOR)),
+                () -> assertTrue(channels.isEmpty()));
     }
 
     @Test
     void whenHandleJoinIsCalledChannelIsCreated() {
         final var chName = "channel";
         final var user = mockUser("name", "pass").user;
-        cs.handleJoin(ctx, storage, user, chName);
-        assertAll(() -> verify(ctx).writeAndFlush(String.format("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
-                () -> verify(ctx).writeAndFlush(String.format("You've joined channel %s.%s", chName, LINE_SEPARATOR)),
+        cs.handleJoin(ctx, asyncStorage, user, chName);
+        assertAll(() -> verify(ctx).writeAndFlush(response("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
+                () -> verify(ctx).writeAndFlush(response("You've joined channel %s.%s", chName, LINE_SEPARATOR)),
                 () -> assertEquals(1, channels.size()));
     }
 
@@ -96,9 +116,9 @@ public class ChatServiceTest extends ChatServerTestBase {
         final var chName = "channel";
         final var user = mockUser("name", "pass").user;
         mockChannel(chName);
-        cs.handleJoin(ctx, storage, user, chName);
-        assertAll(() -> verify(ctx, never()).writeAndFlush(String.format("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
-                () -> verify(ctx).writeAndFlush(String.format("You've joined channel %s.%s", chName, LINE_SEPARATOR)),
+        cs.handleJoin(ctx, asyncStorage, user, chName);
+        assertAll(() -> verify(ctx, never()).writeAndFlush(response("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
+                () -> verify(ctx).writeAndFlush(response("You've joined channel %s.%s", chName, LINE_SEPARATOR)),
                 () -> assertEquals(1, channels.size()));
     }
 
@@ -110,16 +130,16 @@ public class ChatServiceTest extends ChatServerTestBase {
             channel.addUser(mockUser("" + i, "pass").user);
         }
         final var user = mockUser("name", "pass").user;
-        cs.handleJoin(ctx, storage, user, chName);
+        cs.handleJoin(ctx, asyncStorage, user, chName);
         assertAll(() ->
                         verify(ctx)
-                                .writeAndFlush(String.format("The channel you've tried to connect is at max capacity.%s", LINE_SEPARATOR)),
+                                .writeAndFlush(response("The channel you've tried to connect is at max capacity.%s", LINE_SEPARATOR)),
                 () ->
                         verify(ctx, never())
-                                .writeAndFlush(String.format("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
+                                .writeAndFlush(response("New channel %s has been created.%s", chName, LINE_SEPARATOR)),
                 () ->
                         verify(ctx, never())
-                                .writeAndFlush(String.format("You've joined channel %s.%s", chName, LINE_SEPARATOR)));
+                                .writeAndFlush(response("You've joined channel %s.%s", chName, LINE_SEPARATOR)));
     }
 
     @Test
@@ -128,13 +148,26 @@ public class ChatServiceTest extends ChatServerTestBase {
         final var user = mockUser("name", "pass").user;
         final var newChannel = mockChannel("channel2").channel;
         oldChannel.addUser(user);
-        cs.joinChannel(ctx, storage, user, newChannel);
+        cs.joinChannel(ctx, asyncStorage, user, newChannel);
         assertAll(
                 () -> assertTrue(storage.anyChannelContainsUser(user)),
                 () -> verify(storage).removeUserFromChannels(user),
                 () -> assertFalse(oldChannel.channel.getUsers().contains(user)));
     }
 
+    @Test
+    void whenChannelWasEvictedSinceLookupItIsJoinedByName() {
+        final var user = mockUser("name", "pass").user;
+        final var evicted = mock(ChatChannel.class);
+        when(evicted.getName()).thenReturn("channel");
+        when(evicted.isEvicted()).thenReturn(true);
+        cs.joinChannel(ctx, asyncStorage, user, evicted);
+        assertAll(() -> verify(ctx).writeAndFlush(response("You've joined channel %s.%s", "channel", LINE_SEPARATOR)),
+                () -> assertEquals(1, channels.size()),
+                () -> assertFalse(channels.contains(evicted)),
+                () -> assertTrue(channels.iterator().next().containsUser(user)));
+    }
+
     @Test
     void whenUserLeaveChannelHeIsRemovedFromChannelUserList() {
         final var channel = mock(Channel.class);
@@ -142,10 +175,66 @@ public class ChatServiceTest extends ChatServerTestBase {
         final var secondUser = mockUser("name2", "pass").addChannel(channel).user;
         final var cc = mockChannel("channel").addUser(user).addUser(secondUser);
         when(storage.getCurrentChatChannel(user)).thenReturn(cc.channel);
-        cs.handleLeave(ctx, storage, user);
+        cs.handleLeave(ctx, asyncStorage, user);
         assertAll(() ->
                         verify(channel).writeAndFlush(String.format("User %s has left the channel.%s", user, LINE_SEPARATOR)),
                 () -> assertFalse(cc.users.contains(user)));
     }
 
+    @Test
+    void whenUserJoinsWritesAndLeavesEventsAreAudited() {
+        final var auditLog = mock(AuditLog.class);
+        final var audited = new ChatService(ChatChannelListener.NONE, auditLog);
+        final var user = mockUser("name", "pass").user;
+        audited.handleJoin(ctx, asyncStorage, user, "channel");
+        when(storage.getCurrentChatChannel(user)).thenReturn(channels.iterator().next());
+        audited.sendMessage(ctx, asyncStorage, user, "hello");
+        audited.handleLeave(ctx, asyncStorage, user);
+        final var order = inOrder(auditLog);
+        order.verify(auditLog).join("name", "channel");
+        order.verify(auditLog).message("name", "channel", "hello");
+        order.verify(auditLog).leave("name", "channel");
+    }
+
+    @Test
+    void whenUserJoinsAnotherChannelLeavingPreviousOneIsAudited() {
+        final var auditLog = mock(AuditLog.class);
+        final var audited = new ChatService(ChatChannelListener.NONE, auditLog);
+        final var user = mockUser("name", "pass").user;
+        audited.handleJoin(ctx, asyncStorage, user, "first");
+        audited.handleJoin(ctx, asyncStorage, user, "second");
+        final var order = inOrder(auditLog);
+        order.verify(auditLog).join("name", "first");
+        order.verify(auditLog).leave("name", "first");
+        order.verify(auditLog).join("name", "second");
+    }
+
+    @Test
+    void whenStorageCompletesLaterResponseIsWrittenOnCompletion() {
+        final var slowStorage = mock(AsyncStorage.class);
+        final var pending = new CompletableFuture<User>();
+        when(slowStorage.getUserByName("name")).thenReturn(pending);
+        when(slowStorage.createUser(ctx, "name", "pass")).thenReturn(CompletableFuture.completedFuture(null));
+        when(ctx.executor()).thenReturn(ImmediateEventExecutor.INSTANCE);
+        cs.handleLogin(ctx, slowStorage, "name pass");
+        verify(ctx, never()).writeAndFlush(any());
+        pending.complete(null);
+        verify(ctx).writeAndFlush(response("Welcome %s.%s", "name", LINE_SEPARATOR));
+    }
+
+    @Test
+    void whenStorageFailsErrorMessageIsShown() {
+        final var failingStorage = mock(AsyncStorage.class);
+        when(failingStorage.getUserByName("name"))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("unavailable")));
+        cs.handleLogin(ctx, failingStorage, "name pass");
+        verify(ctx).writeAndFlush(response("ERROR: Storage is unavailable, please try again.%s", LINE_SEPARATOR));
+    }
+
+    /**
+     * Replies are written as buffers, which equal the expected buffer when their content does.
+     */
+    private static ByteBuf response(final String format, final Object... args) {
+        return Unpooled.copiedBuffer(String.format(format, args), CharsetUtil.UTF_8);
+    }
 }
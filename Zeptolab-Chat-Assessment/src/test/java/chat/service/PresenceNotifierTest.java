@@ -0,0 +1,129 @@
+package chat.service;
+
+import chat.model.ChatChannel;
+import chat.model.User;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceNotifierTest {
+
+    private static final long WINDOW_MILLIS = 250;
+
+    private final Timer timer = mock(Timer.class);
+    private final PresenceNotifier notifier = new PresenceNotifier(WINDOW_MILLIS, timer);
+    private final ChatChannel room = new ChatChannel("room", 10);
+    private int nextUserId;
+
+    @Test
+    void testDeparturesInWindowAreSentAsOneLine() throws Exception {
+        final var listener = user("listener");
+        final var connection = connect(listener);
+        for (final String name : List.of("a", "b", "c")) {
+            final var user = user(name);
+            room.removeUser(user);
+            notifier.userLeft(room, user);
+        }
+        assertEquals(List.of(), lines(connection));
+
+        runWindow();
+
+        assertEquals(List.of("Users a, b and c have left the channel."), lines(connection));
+        assertEquals(0, notifier.getPendingChannelCount());
+    }
+
+    @Test
+    void testUsersBackInChannelAreLeftOut() throws Exception {
+        final var connection = connect(user("listener"));
+        final var back = user("back");
+        room.removeUser(back);
+        notifier.userLeft(room, back);
+        final var gone = user("gone");
+        room.removeUser(gone);
+        notifier.userLeft(room, gone);
+        room.addUser(back);
+
+        runWindow();
+
+        assertEquals(List.of("User gone has left the channel."), lines(connection));
+    }
+
+    @Test
+    void testUnwritableConnectionCatchesUpWithMergedLine() throws Exception {
+        final var slow = connect(user("slow"));
+        final var fast = connect(user("fast"));
+        slow.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        final var a = user("a");
+        room.removeUser(a);
+        notifier.userLeft(room, a);
+        runWindow();
+        final var b = user("b");
+        room.removeUser(b);
+        notifier.userLeft(room, b);
+
+        slow.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        runWindow();
+
+        assertEquals(List.of("User a has left the channel.", "User b has left the channel."), lines(fast));
+        assertEquals(List.of("Users a and b have left the channel."), lines(slow));
+        assertEquals(0, notifier.getPendingChannelCount());
+    }
+
+    @Test
+    void testLongListsAreCounted() {
+        assertEquals("Users a, b and 3 others have left the channel.",
+                PresenceNotifier.text(List.of("a", "b", "c", "d", "e")));
+    }
+
+    @Test
+    void testImmediateNotifierWritesRightAway() {
+        final var connection = connect(user("listener"));
+        final var gone = user("gone");
+        room.removeUser(gone);
+        PresenceNotifier.IMMEDIATE.userLeft(room, gone);
+        assertEquals(List.of("User gone has left the channel."), lines(connection));
+    }
+
+    private User user(final String name) {
+        final var user = new User(nextUserId++, name, "pass");
+        room.addUser(user);
+        return user;
+    }
+
+    private static EmbeddedChannel connect(final User user) {
+        final var connection = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        user.addChannel(connection);
+        return connection;
+    }
+
+    /**
+     * Runs the task of the window that has been scheduled since the last call.
+     */
+    private void runWindow() throws Exception {
+        final var task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(WINDOW_MILLIS), eq(TimeUnit.MILLISECONDS));
+        clearInvocations(timer);
+        task.getValue().run(mock(Timeout.class));
+    }
+
+    private static List<String> lines(final EmbeddedChannel connection) {
+        final var lines = new ArrayList<String>();
+        Object message;
+        while ((message = connection.readOutbound()) != null) {
+            lines.add(message.toString().strip());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,127 @@
+package chat.websocket;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test client speaking the line protocol over plain TCP or WebSocket, received lines are queued.
+ */
+abstract class LineClient implements AutoCloseable {
+
+    final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+    static LineClient tcp(final int port) throws IOException {
+        return new Tcp(port);
+    }
+
+    static LineClient webSocket(final int port) {
+        return new Ws(port);
+    }
+
+    abstract void send(String line) throws IOException;
+
+    /**
+     * Closes the connection. Narrows {@link AutoCloseable#close()}, which may throw {@link InterruptedException},
+     * so that try-with-resources in tests does not swallow interrupts.
+     */
+    @Override
+    public abstract void close() throws IOException;
+
+    /**
+     * @return next received line, or null if nothing arrived within the timeout
+     */
+    String poll(final long timeoutMillis) throws InterruptedException {
+        return lines.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void await(final String expected, final long timeoutMillis) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + timeoutMillis;
+        String line;
+        do {
+            line = poll(Math.max(1, deadline - System.currentTimeMillis()));
+        } while (line != null && !line.equals(expected));
+        if (line == null) {
+            throw new AssertionError("Expected " + expected);
+        }
+    }
+
+    private static final class Tcp extends LineClient {
+
+        private final Socket socket;
+        private final OutputStream out;
+
+        private Tcp(final int port) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            out = socket.getOutputStream();
+            final var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            final var thread = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException e) {
+                    // Closed.
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        void send(final String line) throws IOException {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static final class Ws extends LineClient implements WebSocket.Listener {
+
+        private final StringBuilder partial = new StringBuilder();
+        private final WebSocket webSocket;
+
+        private Ws(final int port) {
+            webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+                    .buildAsync(URI.create("ws://127.0.0.1:" + port + WebSocketServerInitializer.PATH), this)
+                    .join();
+        }
+
+        @Override
+        public CompletionStage<?> onText(final WebSocket webSocket, final CharSequence data, final boolean last) {
+            partial.append(data);
+            if (last) {
+                // Frames carry the text of the line protocol, one or more complete lines.
+                partial.toString().lines().forEach(lines::add);
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        void send(final String line) {
+            webSocket.sendText(line, true).join();
+        }
+
+        @Override
+        public void close() {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package chat.websocket;
+
+import chat.server.ChatServer;
+import chat.server.ChatServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares broadcast throughput of line and WebSocket connections on the same server. Every room is filled
+ * to capacity and one member of each room sends messages that all members receive. Sizes can be raised with
+ * {@code chat.load.*} system properties for a longer run.
+ */
+class TransportLoadIT {
+
+    private static final int ROOMS = Integer.getInteger("chat.load.rooms", 5);
+    private static final int ROOM_SIZE = 10;
+    private static final int MESSAGES = Integer.getInteger("chat.load.messages", 1_000);
+    private static final long TIMEOUT_MILLIS = 60_000;
+
+    private final List<LineClient> clients = new ArrayList<>();
+    private ChatServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var config = new ChatServerConfig();
+        config.setPort(0);
+        config.setWebSocketPort(0);
+        server = new ChatServer(config);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final LineClient client : clients) {
+            client.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    void compareLineAndWebSocketBroadcasts() throws Exception {
+        // Warm up both paths before measuring.
+        run("warmup-tcp", false, MESSAGES / 10);
+        run("warmup-ws", true, MESSAGES / 10);
+
+        final var lineNanos = run("tcp", false, MESSAGES);
+        final var webSocketNanos = run("ws", true, MESSAGES);
+
+        final var deliveries = (long) ROOMS * ROOM_SIZE * MESSAGES;
+        System.out.printf("Broadcast %d messages to %d rooms of %d: line %.0f deliveries/s, WebSocket %.0f deliveries/s%n",
+                MESSAGES, ROOMS, ROOM_SIZE, perSecond(deliveries, lineNanos), perSecond(deliveries, webSocketNanos));
+    }
+
+    /**
+     * @return nanoseconds from the first message sent until every member received every message
+     */
+    private long run(final String prefix, final boolean webSocket, final int messages) throws Exception {
+        final var rooms = new ArrayList<List<LineClient>>();
+        for (int r = 0; r < ROOMS; r++) {
+            final var members = new ArrayList<LineClient>();
+            for (int m = 0; m < ROOM_SIZE; m++) {
+                final var client = webSocket
+                        ? LineClient.webSocket(server.getBoundWebSocketPort())
+                        : LineClient.tcp(server.getBoundPort());
+                clients.add(client);
+                final var name = prefix + "-" + r + "-" + m;
+                client.send("/login " + name + " pass");
+                client.await("Welcome " + name + ".", TIMEOUT_MILLIS);
+                client.send("/join " + prefix + "-room" + r);
+                client.await("You've joined channel " + prefix + "-room" + r + ".", TIMEOUT_MILLIS);
+                members.add(client);
+            }
+            rooms.add(members);
+        }
+        for (final List<LineClient> members : rooms) {
+            for (final LineClient member : members) {
+                member.lines.clear();
+            }
+        }
+
+        final var start = System.nanoTime();
+        for (final List<LineClient> members : rooms) {
+            final var sender = members.get(0);
+            for (int i = 0; i < messages; i++) {
+                sender.send("message " + i);
+            }
+        }
+        final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (final List<LineClient> members : rooms) {
+            for (final LineClient member : members) {
+                var received = 0;
+                while (received < messages) {
+                    final var line = member.lines.poll(Math.max(1, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                    assertNotNull(line, "Received " + received + " of " + messages + " messages");
+                    if (line.contains(": message ")) {
+                        received++;
+                    }
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return count * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,63 @@
+package chat.websocket;
+
+import chat.model.Broadcast;
+import chat.model.BroadcastEncoder;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketBroadcastEncoderTest {
+
+    @Test
+    void testShortTextIsFramedWithSingleByteLength() {
+        final var frame = new WebSocketBroadcastEncoder(-1).encode("a: hi\n", 1);
+        assertEquals("8106613a2068690a", ByteBufUtil.hexDump(frame));
+        frame.release();
+    }
+
+    @Test
+    void testLongTextIsFramedWithExtendedLength() {
+        final var text = "x".repeat(300);
+        final var frame = new WebSocketBroadcastEncoder(-1).encode(text, 1);
+        assertEquals(0x81, frame.getUnsignedByte(0));
+        assertEquals(126, frame.getUnsignedByte(1));
+        assertEquals(300, frame.getUnsignedShort(2));
+        assertEquals(304, frame.readableBytes());
+        frame.release();
+    }
+
+    @Test
+    void testSmallRoomsAreLeftToDeflate() {
+        final var encoder = new WebSocketBroadcastEncoder(16);
+        assertNull(encoder.encode("a: hi\n", 16));
+        final var frame = encoder.encode("a: hi\n", 17);
+        assertNotNull(frame);
+        frame.release();
+    }
+
+    @Test
+    void testRecipientsShareOneFrame() {
+        final var encoder = new WebSocketBroadcastEncoder(-1);
+        final var first = new EmbeddedChannel();
+        final var second = new EmbeddedChannel();
+        final var plain = new EmbeddedChannel();
+        first.attr(BroadcastEncoder.KEY).set(encoder);
+        second.attr(BroadcastEncoder.KEY).set(encoder);
+        final var broadcast = new Broadcast("a: hi\n", 3);
+
+        final var firstFrame = (PreFramedFrame) broadcast.messageFor(first);
+        final var secondFrame = (PreFramedFrame) broadcast.messageFor(second);
+        final var plainMessage = broadcast.messageFor(plain);
+        broadcast.release();
+
+        assertSame(firstFrame.content().unwrap(), secondFrame.content().unwrap());
+        assertEquals(ByteBufUtil.hexDump(firstFrame.content()), ByteBufUtil.hexDump(secondFrame.content()));
+        assertEquals("a: hi\n", plainMessage);
+        final var shared = firstFrame.content().unwrap();
+        firstFrame.release();
+        secondFrame.release();
+        assertEquals(0, shared.refCnt());
+    }
+}
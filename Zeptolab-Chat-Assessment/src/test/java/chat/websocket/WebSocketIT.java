@@ -0,0 +1,81 @@
+package chat.websocket;
+
+import chat.server.ChatServer;
+import chat.server.ChatServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketIT {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    private final List<LineClient> clients = new ArrayList<>();
+    private ChatServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final var config = new ChatServerConfig();
+        config.setPort(0);
+        config.setWebSocketPort(0);
+        server = new ChatServer(config);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final LineClient client : clients) {
+            client.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    void testWebSocketAndLineClientsShareRooms() throws Exception {
+        final var browser = client(LineClient.webSocket(server.getBoundWebSocketPort()));
+        final var terminal = client(LineClient.tcp(server.getBoundPort()));
+        login(browser, "browser");
+        login(terminal, "terminal");
+        join(browser, "lobby");
+        join(terminal, "lobby");
+
+        terminal.send("hello browser");
+        browser.await("terminal: hello browser", TIMEOUT_MILLIS);
+        browser.send("hello terminal");
+        terminal.await("browser: hello terminal", TIMEOUT_MILLIS);
+    }
+
+    @Test
+    void testFrameWithSeveralCommands() throws Exception {
+        final var browser = client(LineClient.webSocket(server.getBoundWebSocketPort()));
+        browser.send("/login browser pass\r\n/join lobby\n/users");
+        browser.await("Welcome browser.", TIMEOUT_MILLIS);
+        browser.await("You've joined channel lobby.", TIMEOUT_MILLIS);
+        browser.await("browser", TIMEOUT_MILLIS);
+    }
+
+    @Test
+    void testWebSocketListenerIsDisabledByDefault() {
+        assertEquals(-1, new ChatServerConfig().getWebSocketPort());
+    }
+
+    private LineClient client(final LineClient client) {
+        clients.add(client);
+        return client;
+    }
+
+    private static void login(final LineClient client, final String name) throws Exception {
+        client.send("/login " + name + " pass");
+        client.await("Welcome " + name + ".", TIMEOUT_MILLIS);
+    }
+
+    private static void join(final LineClient client, final String room) throws Exception {
+        client.send("/join " + room);
+        client.await("You've joined channel " + room + ".", TIMEOUT_MILLIS);
+    }
+}